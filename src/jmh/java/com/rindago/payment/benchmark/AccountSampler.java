@@ -0,0 +1,42 @@
+package com.rindago.payment.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account index either uniformly or Zipf-skewed, where index 0 is the hottest account
+ */
+final class AccountSampler {
+    private final int size;
+    private final double[] cdf;
+
+    private AccountSampler(int size, double[] cdf) {
+        this.size = size;
+        this.cdf = cdf;
+    }
+
+    static AccountSampler of(String distribution, int size) {
+        return "ZIPF".equals(distribution) ? zipf(size, 1.0) : new AccountSampler(size, null);
+    }
+
+    static AccountSampler zipf(int size, double exponent) {
+        double[] cdf = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= sum;
+        }
+        return new AccountSampler(size, cdf);
+    }
+
+    int next(ThreadLocalRandom random) {
+        if (cdf == null) {
+            return random.nextInt(size);
+        }
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, size - 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.rindago.payment.benchmark;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.repository.AccountRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application started for a benchmark trial, without web server unless asked for. Arguments are passed as command line so they override application.properties
+ */
+final class BenchmarkContexts {
+
+    private BenchmarkContexts() {
+    }
+
+    static ConfigurableApplicationContext start(String... args) {
+        return start(WebApplicationType.NONE, args);
+    }
+
+    /**
+     * Application with embedded Tomcat on a random port, see {@link #port}
+     */
+    static ConfigurableApplicationContext startServer(String... args) {
+        String[] allArgs = new String[args.length + 1];
+        allArgs[0] = "--server.port=0";
+        System.arraycopy(args, 0, allArgs, 1, args.length);
+        return start(WebApplicationType.SERVLET, allArgs);
+    }
+
+    static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... args) {
+        String[] allArgs = new String[args.length + 1];
+        allArgs[0] = "--logging.level.root=WARN";
+        System.arraycopy(args, 0, allArgs, 1, args.length);
+
+        return new SpringApplicationBuilder(PaymentApplication.class)
+                .web(webApplicationType)
+                .run(allArgs);
+    }
+
+    /**
+     * Accounts rich enough that no benchmark transfer is rejected for balance
+     */
+    static long[] createAccounts(ConfigurableApplicationContext context, int count) {
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(new Account(null, "Bench+" + i + "@User", Money.valueOf(1_000_000_000L)));
+        }
+        context.getBean(AccountRepository.class).saveAll(accounts);
+        return accounts.stream().mapToLong(Account::getId).toArray();
+    }
+}
@@ -0,0 +1,62 @@
+package com.rindago.payment.benchmark;
+
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.service.BatchPaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payment ingestion through the batch service, JDBC batch size and id allocation size 1 are the unbatched baseline
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BulkInsertBenchmark.PAYMENTS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkInsertBenchmark {
+    static final int PAYMENTS = 1000;
+
+    @Param({"1", "50"})
+    public int jdbcBatchSize;
+
+    @Param({"1", "50"})
+    public int idAllocationSize;
+
+    private ConfigurableApplicationContext context;
+    private BatchPaymentService batchPaymentService;
+    private List<PaymentRequestDTO> payments;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                "--payment.batch.chunk-size=" + jdbcBatchSize,
+                "--spring.jpa.properties.payment.id.increment-size.account_seq=" + idAllocationSize,
+                "--spring.jpa.properties.payment.id.increment-size.payment_seq=" + idAllocationSize);
+        batchPaymentService = context.getBean(BatchPaymentService.class);
+
+        long[] accountIds = BenchmarkContexts.createAccounts(context, 2);
+        payments = new ArrayList<>(PAYMENTS);
+        for (int i = 0; i < PAYMENTS; i++) {
+            payments.add(new PaymentRequestDTO(accountIds[i % 2], accountIds[(i + 1) % 2], Money.ofCents(1)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object ingest() {
+        return batchPaymentService.performBatch(payments, BatchPaymentRequestDTO.Mode.ALL_OR_NOTHING);
+    }
+}
@@ -0,0 +1,83 @@
+package com.rindago.payment.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /payment over HTTP with far more concurrent clients than JDBC connections, platform vs virtual request threads.
+ * VIRTUAL needs the benchmark JVM to be Java 21+
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final int ACCOUNTS = 1000;
+    private static final int JDBC_CONCURRENCY = 10;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String executionMode;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI paymentUri;
+    private long[] accountIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.startServer(
+                "--payment.execution.mode=" + executionMode,
+                "--payment.execution.jdbc-concurrency=" + JDBC_CONCURRENCY,
+                "--server.tomcat.threads.max=512",
+                "--server.tomcat.max-connections=1024");
+        accountIds = BenchmarkContexts.createAccounts(context, ACCOUNTS);
+        paymentUri = URI.create("http://localhost:" + BenchmarkContexts.port(context) + "/payment");
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int post_64_clients() throws IOException, InterruptedException {
+        return post();
+    }
+
+    @Benchmark
+    @Threads(512)
+    public int post_512_clients() throws IOException, InterruptedException {
+        return post();
+    }
+
+    /**
+     * Status code is returned, 400 for a rejected transfer is part of the measured cost
+     */
+    private int post() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = accountIds[random.nextInt(ACCOUNTS)];
+        long to = accountIds[random.nextInt(ACCOUNTS)];
+        String body = "{\"senderAccountId\":" + from + ",\"receiverAccountId\":" + to + ",\"amount\":0.01}";
+        HttpRequest request = HttpRequest.newBuilder(paymentUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,94 @@
+package com.rindago.payment.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.config.JacksonConfiguration;
+import com.rindago.payment.config.PaymentJsonConverter;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request reading with validation and response writing, generic ObjectMapper path against {@link PaymentJsonConverter}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private static final byte[] REQUEST = "{\"senderAccountId\":1,\"receiverAccountId\":2,\"amount\":100.00}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper mapper;
+    private PaymentJsonConverter converter;
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private PaymentService.Transaction transaction;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(JacksonAutoConfiguration.class, JacksonConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN");
+        mapper = context.getBean(ObjectMapper.class);
+        converter = context.getBean(PaymentJsonConverter.class);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        out = new ByteArrayOutputStream(256);
+        transaction = new PaymentService.Transaction(123456L, Instant.parse("2020-10-01T10:15:30.123Z"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        validatorFactory.close();
+        context.close();
+    }
+
+    @Benchmark
+    public PaymentRequestDTO readRequest() throws IOException {
+        return mapper.readValue(REQUEST, PaymentRequestDTO.class);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<PaymentRequestDTO>> readAndValidateRequest() throws IOException {
+        return validator.validate(mapper.readValue(REQUEST, PaymentRequestDTO.class));
+    }
+
+    /**
+     * Validated inline, bean validation is skipped for the result
+     */
+    @Benchmark
+    public PaymentRequestDTO readRequestFastPath() throws IOException {
+        return converter.readRequest(REQUEST);
+    }
+
+    @Benchmark
+    public byte[] writeTransaction() throws IOException {
+        return mapper.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public int writeTransactionFastPath() throws IOException {
+        out.reset();
+        converter.writeTransaction(transaction, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,188 @@
+package com.rindago.payment.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load test of POST /payment against the application started in-process on a random port.
+ * Run with {@code gradle loadTest -PloadTestArgs="--load.accounts=10000 --load.distribution=ZIPF --spring.profiles.active=production"}.
+ * <ul>
+ *     <li>{@code --load.accounts} accounts created before the run, default 1000</li>
+ *     <li>{@code --load.distribution} UNIFORM or ZIPF sender and receiver choice, default UNIFORM</li>
+ *     <li>{@code --load.concurrency} clients, each with one request in flight, default 64</li>
+ *     <li>{@code --load.warmup} and {@code --load.duration}, default 10s and 30s</li>
+ * </ul>
+ * Any other argument is passed to the application. Reports throughput, latency percentiles and status codes
+ */
+public final class LoadGenerator {
+    private static final String OPTION_PREFIX = "--load.";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        // A production profile run gets its own database, created from schema.sql
+        applicationArgs.add("--payment.database.directory=build/load-test/db");
+        applicationArgs.add("--spring.datasource.initialization-mode=always");
+        for (String arg : args) {
+            if (arg.startsWith(OPTION_PREFIX) && arg.contains("=")) {
+                options.put(arg.substring(OPTION_PREFIX.length(), arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "1000"));
+        String distribution = options.getOrDefault("distribution", "UNIFORM");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+
+        ConfigurableApplicationContext context = BenchmarkContexts.startServer(applicationArgs.toArray(new String[0]));
+        try {
+            long[] accountIds = BenchmarkContexts.createAccounts(context, accounts);
+            URI paymentUri = URI.create("http://localhost:" + BenchmarkContexts.port(context) + "/payment");
+
+            System.out.printf("POST %s: %d accounts (%s), %d clients, %s warmup, %s measured%n",
+                    paymentUri, accounts, distribution, concurrency, warmup, duration);
+            Result result = run(paymentUri, accountIds, AccountSampler.of(distribution, accounts), concurrency, warmup, duration);
+            result.print(duration);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Result run(URI paymentUri, long[] accountIds, AccountSampler sampler, int concurrency,
+                              Duration warmup, Duration duration) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long measureUntil = measureFrom + duration.toNanos();
+
+        Client[] clients = new Client[concurrency];
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            clients[i] = new Client(client, paymentUri, accountIds, sampler, measureFrom, measureUntil);
+            threads[i] = new Thread(clients[i], "load-" + i);
+            threads[i].start();
+        }
+
+        Result total = new Result();
+        for (int i = 0; i < concurrency; i++) {
+            threads[i].join();
+            total.add(clients[i].result);
+        }
+        return total;
+    }
+
+    /**
+     * One request in flight at a time, results are recorded inside the measurement window only
+     */
+    private static class Client implements Runnable {
+        private final HttpClient client;
+        private final URI paymentUri;
+        private final long[] accountIds;
+        private final AccountSampler sampler;
+        private final long measureFrom;
+        private final long measureUntil;
+        private final Result result = new Result();
+
+        private Client(HttpClient client, URI paymentUri, long[] accountIds, AccountSampler sampler, long measureFrom, long measureUntil) {
+            this.client = client;
+            this.paymentUri = paymentUri;
+            this.accountIds = accountIds;
+            this.sampler = sampler;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (long start = System.nanoTime(); start < measureUntil; start = System.nanoTime()) {
+                int from = sampler.next(random);
+                int to = sampler.next(random);
+                if (from == to) {
+                    to = (to + 1) % accountIds.length;
+                }
+                String body = "{\"senderAccountId\":" + accountIds[from] + ",\"receiverAccountId\":" + accountIds[to] + ",\"amount\":0.01}";
+                HttpRequest request = HttpRequest.newBuilder(paymentUri)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    status = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (start >= measureFrom) {
+                    result.record(status, System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    private static class Result {
+        private final Histogram latencyMicros = new Histogram(MAX_LATENCY_MICROS, 3);
+        private long ok;
+        private long rejected;
+        private long failed;
+
+        /**
+         * @param status 0 when the request did not get a response
+         */
+        private void record(int status, long latencyNanos) {
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+            if (status >= 200 && status < 300) {
+                ok++;
+            } else if (status >= 400 && status < 500) {
+                rejected++;
+            } else {
+                failed++;
+            }
+        }
+
+        private void add(Result other) {
+            latencyMicros.add(other.latencyMicros);
+            ok += other.ok;
+            rejected += other.rejected;
+            failed += other.failed;
+        }
+
+        private void print(Duration duration) {
+            long requests = latencyMicros.getTotalCount();
+            System.out.printf("requests: %d (2xx %d, 4xx %d, 5xx or no response %d)%n", requests, ok, rejected, failed);
+            System.out.printf("throughput: %.1f requests/s%n", requests / (duration.toNanos() / 1e9));
+            System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                    percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(99.9),
+                    latencyMicros.getMaxValue() / 1000.0);
+        }
+
+        private double percentileMillis(double percentile) {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
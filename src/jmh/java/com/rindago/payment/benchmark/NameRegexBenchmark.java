@@ -0,0 +1,82 @@
+package com.rindago.payment.benchmark;
+
+import com.rindago.payment.config.Constants;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.AccountNameValidator;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.UpdateConstraints;
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of Constants.NAME_REGEX against the hand-written {@link AccountNameValidator} for a short name, an e-mail like
+ * name, a long name that fails at the last char and an e-mail like name with a trailing dot. The update benchmarks
+ * compare validating the whole account (every balance update before) with the empty update group used now
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameRegexBenchmark {
+    private static final Pattern NAME_PATTERN = Pattern.compile(Constants.NAME_REGEX);
+
+    @Param({"Test@User", "a+b@a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.a.", "ridango.payments-team@mail.example.com", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa#"})
+    public String name;
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private Account account;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        account = new Account(1L, "Test@User", Money.valueOf(100));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public boolean precompiledPattern() {
+        return NAME_PATTERN.matcher(name).matches();
+    }
+
+    @Benchmark
+    public boolean handWritten() {
+        return AccountNameValidator.isValidName(name);
+    }
+
+    @Benchmark
+    public boolean stringMatches() {
+        return name.matches(Constants.NAME_REGEX);
+    }
+
+    /**
+     * Whole constraint set of Account.name, the way it runs on every account persist
+     */
+    @Benchmark
+    public Set<?> beanValidation() {
+        return validator.validateValue(Account.class, "name", name);
+    }
+
+    @Benchmark
+    public Set<?> updateWholeAccount() {
+        return validator.validate(account);
+    }
+
+    @Benchmark
+    public Set<?> updateGroup() {
+        return validator.validate(account, UpdateConstraints.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.rindago.payment.benchmark;
+
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput per transfer mode under growing concurrency and account skew
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PaymentServiceBenchmark {
+    private static final int ACCOUNTS = 1000;
+    private static final Money AMOUNT = Money.ofCents(1);
+
+    @Param({"PESSIMISTIC", "OPTIMISTIC", "ATOMIC_UPDATE"})
+    public String transferMode;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public String distribution;
+
+    private ConfigurableApplicationContext context;
+    private PaymentService paymentService;
+    private long[] accountIds;
+    private AccountSampler sampler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start("--payment.transfer-mode=" + transferMode);
+        paymentService = context.getBean(PaymentService.class);
+        accountIds = BenchmarkContexts.createAccounts(context, ACCOUNTS);
+        sampler = AccountSampler.of(distribution, ACCOUNTS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object transfer_1_thread() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object transfer_8_threads() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object transfer_64_threads() {
+        return transfer();
+    }
+
+    private Object transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = accountIds[sampler.next(random)];
+        long to = accountIds[sampler.next(random)];
+        try {
+            return paymentService.performTransaction(AMOUNT, from, to);
+        } catch (TransactionException e) {
+            // Exhausted optimistic retries under skew are part of the measured cost
+            return e;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.rindago.payment.benchmark;
+
+import com.rindago.payment.controller.ExceptionController;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.error.ErrorMessage;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejected transfers from the service down to the error body. Run on the previous revision too to compare,
+ * {@link #stackTraceBaseline} shows what capturing a stack trace alone costs at this call depth
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionBenchmark {
+    private static final Money AMOUNT = Money.ofCents(1);
+
+    private ConfigurableApplicationContext context;
+    private PaymentService paymentService;
+    private ExceptionController exceptionController;
+    private long emptyAccountId;
+    private long receiverAccountId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start();
+        paymentService = context.getBean(PaymentService.class);
+        exceptionController = context.getBean(ExceptionController.class);
+
+        Account empty = new Account(null, "Reject+1@User", Money.ZERO);
+        Account receiver = new Account(null, "Reject+2@User", Money.ZERO);
+        context.getBean(AccountRepository.class).saveAll(List.of(empty, receiver));
+        emptyAccountId = empty.getId();
+        receiverAccountId = receiver.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Balance is known to be too low after the first call, rejected without a database round-trip
+     */
+    @Benchmark
+    @Threads(8)
+    public ErrorMessage notEnoughAmount() {
+        return reject(emptyAccountId, receiverAccountId);
+    }
+
+    /**
+     * Missing account is cached as well
+     */
+    @Benchmark
+    @Threads(8)
+    public ErrorMessage unknownAccount() {
+        return reject(-1L, receiverAccountId);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public RuntimeException stackTraceBaseline() {
+        return new RuntimeException("Sender balance is not enough");
+    }
+
+    private ErrorMessage reject(long from, long to) {
+        try {
+            paymentService.performTransaction(AMOUNT, from, to);
+        } catch (TransactionException e) {
+            return exceptionController.processTransactionError(e);
+        }
+        throw new IllegalStateException("Transfer was not rejected");
+    }
+}
@@ -0,0 +1,61 @@
+package com.rindago.payment.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Request execution mode, see {@link PaymentProperties.ExecutionMode}.
+ * The build targets Java 14, so virtual threads are looked up at runtime and only need a Java 21+ JVM to run
+ */
+@Configuration
+@Slf4j
+public class ExecutionConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "payment.execution.mode", havingValue = "VIRTUAL")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * Static, a post processor must not pull in other beans early
+     */
+    @Bean
+    public static BeanPostProcessor jdbcConcurrencyLimiter(ObjectProvider<PaymentProperties> paymentProperties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // Only the data source the application uses, not the pools behind read-only routing
+                if (!(bean instanceof DataSource) || !"dataSource".equals(beanName) || bean instanceof ConcurrencyLimitingDataSource) {
+                    return bean;
+                }
+                PaymentProperties.Execution execution = paymentProperties.getObject().getExecution();
+                if (execution.getJdbcConcurrency() <= 0) {
+                    return bean;
+                }
+                return new ConcurrencyLimitingDataSource((DataSource) bean, execution.getJdbcConcurrency(), execution.getJdbcAcquireTimeout());
+            }
+        };
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("payment.execution.mode=VIRTUAL needs a Java 21+ runtime, running on " + Runtime.version(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor could not be created", e);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.rindago.payment.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -16,4 +18,18 @@ public class JacksonConfiguration {
     public Jdk8Module jdk8TimeModule() {
         return new Jdk8Module();
     }
+
+    @Bean
+    public MoneyJsonModule moneyJsonModule() {
+        return new MoneyJsonModule();
+    }
+
+    /**
+     * Picked up by Spring MVC ahead of the Jackson converter, for PaymentRequestDTO and the transfer response only
+     */
+    @Bean
+    @ConditionalOnProperty(name = "payment.json.fast-path", havingValue = "true", matchIfMissing = true)
+    public PaymentJsonConverter paymentJsonConverter(ObjectMapper mapper) {
+        return new PaymentJsonConverter(mapper);
+    }
 }
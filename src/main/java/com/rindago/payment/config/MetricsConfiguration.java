@@ -0,0 +1,51 @@
+package com.rindago.payment.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Share of the pool in use. Raw hikaricp.connections.* meters are registered by Spring Boot
+     */
+    @Bean
+    public MeterBinder connectionPoolUsage(DataSource dataSource) {
+        return registry -> {
+            HikariDataSource hikariDataSource = unwrap(dataSource, HikariDataSource.class);
+            if (hikariDataSource != null) {
+                Gauge.builder("payment.db.pool.usage", hikariDataSource, MetricsConfiguration::poolUsage)
+                        .description("Active connections divided by maximum pool size")
+                        .register(registry);
+            }
+            if (dataSource instanceof ConcurrencyLimitingDataSource) {
+                Gauge.builder("payment.jdbc.permits.available", (ConcurrencyLimitingDataSource) dataSource, ConcurrencyLimitingDataSource::getAvailablePermits)
+                        .description("Free slots of the JDBC concurrency limiter")
+                        .register(registry);
+            }
+        };
+    }
+
+    private static double poolUsage(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : (double) pool.getActiveConnections() / dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * Pool may sit behind {@link ConcurrencyLimitingDataSource}
+     */
+    private static <T> T unwrap(DataSource dataSource, Class<T> type) {
+        try {
+            return dataSource.isWrapperFor(type) ? dataSource.unwrap(type) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.rindago.payment.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.rindago.payment.domain.Money;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * Reads amounts straight from the parser text buffer into cents, numbers and numeric strings are both accepted.
+ * More than two decimal places or exponent notation is a parse error
+ */
+public class MoneyJsonModule extends SimpleModule {
+
+    public MoneyJsonModule() {
+        super("MoneyJsonModule");
+        addDeserializer(Money.class, new MoneyDeserializer());
+        addSerializer(Money.class, new MoneySerializer());
+    }
+
+    static class MoneyDeserializer extends StdScalarDeserializer<Money> {
+        MoneyDeserializer() {
+            super(Money.class);
+        }
+
+        @Override
+        public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT && p.getNumberType() == JsonParser.NumberType.INT) {
+                try {
+                    return Money.valueOf(p.getIntValue());
+                } catch (ArithmeticException e) {
+                    return (Money) ctxt.handleWeirdNumberValue(Money.class, p.getNumberValue(), "amount out of range");
+                }
+            }
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_STRING) {
+                try {
+                    return Money.parse(CharBuffer.wrap(p.getTextCharacters(), p.getTextOffset(), p.getTextLength()));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    return (Money) ctxt.handleWeirdStringValue(Money.class, p.getText(), "not an amount with at most %d decimal places", Money.SCALE);
+                }
+            }
+            return (Money) ctxt.handleUnexpectedToken(Money.class, p);
+        }
+    }
+
+    static class MoneySerializer extends StdScalarSerializer<Money> {
+        MoneySerializer() {
+            super(Money.class);
+        }
+
+        @Override
+        public void serialize(Money value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeNumber(value.toString());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.rindago.payment.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.service.PaymentService;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hot path codec of POST /payment, enabled with payment.json.fast-path.
+ * <ul>
+ *     <li>Request is read token by token from the streaming parser, no databind. A request passing the inline checks
+ *     comes back as {@link ValidatedRequest} and skips bean validation. Anything unusual (type coercion, bad amount,
+ *     failed check) is handed to the generic ObjectMapper and validator, so errors look exactly the same</li>
+ *     <li>Response is written from pre-encoded fragments, same output as the ObjectMapper with ISO-8601 dates</li>
+ * </ul>
+ */
+public class PaymentJsonConverter extends AbstractHttpMessageConverter<Object> {
+    private static final String SENDER_ACCOUNT_ID = "senderAccountId";
+    private static final String RECEIVER_ACCOUNT_ID = "receiverAccountId";
+    private static final String AMOUNT = "amount";
+
+    private static final byte[] TRANSACTION_ID_PREFIX = "{\"transactionId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP_PREFIX = ",\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper mapper;
+    private final JsonFactory factory;
+    /**
+     * Pre-built response matches the ObjectMapper only with ISO-8601 dates, otherwise it writes the response
+     */
+    private final boolean isoDates;
+
+    public PaymentJsonConverter(ObjectMapper mapper) {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.mapper = mapper;
+        this.factory = mapper.getFactory();
+        this.isoDates = !mapper.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    /**
+     * Request passed the same checks as the constraints on {@link PaymentRequestDTO}, keep both in sync
+     */
+    public static final class ValidatedRequest extends PaymentRequestDTO {
+        private ValidatedRequest(Long senderAccountId, Long receiverAccountId, Money amount) {
+            super(senderAccountId, receiverAccountId, amount);
+        }
+    }
+
+    public PaymentRequestDTO readRequest(byte[] body) throws IOException {
+        PaymentRequestDTO request = parse(body);
+        return request != null ? request : mapper.readValue(body, PaymentRequestDTO.class);
+    }
+
+    public void writeTransaction(PaymentService.Transaction transaction, OutputStream out) throws IOException {
+        if (!isoDates || transaction.getTransactionId() == null || transaction.getTimestamp() == null) {
+            out.write(mapper.writeValueAsBytes(transaction));
+            return;
+        }
+        String transactionId = Long.toString(transaction.getTransactionId());
+        String timestamp = transaction.getTimestamp().toString();
+
+        byte[] json = new byte[TRANSACTION_ID_PREFIX.length + transactionId.length() + TIMESTAMP_PREFIX.length + timestamp.length() + SUFFIX.length];
+        int position = append(json, 0, TRANSACTION_ID_PREFIX);
+        position = appendAscii(json, position, transactionId);
+        position = append(json, position, TIMESTAMP_PREFIX);
+        position = appendAscii(json, position, timestamp);
+        append(json, position, SUFFIX);
+        out.write(json);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == PaymentRequestDTO.class || clazz == PaymentService.Transaction.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return clazz == PaymentRequestDTO.class && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return clazz == PaymentService.Transaction.class && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        byte[] body = inputMessage.getBody().readAllBytes();
+        try {
+            return readRequest(body);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object transaction, HttpOutputMessage outputMessage) throws IOException {
+        writeTransaction((PaymentService.Transaction) transaction, outputMessage.getBody());
+    }
+
+    /**
+     * @return null when the body needs the generic path
+     */
+    private PaymentRequestDTO parse(byte[] body) throws IOException {
+        Long senderAccountId = null;
+        Long receiverAccountId = null;
+        Money amount = null;
+
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case SENDER_ACCOUNT_ID:
+                        if (value != JsonToken.VALUE_NUMBER_INT) {
+                            return null;
+                        }
+                        senderAccountId = parser.getLongValue();
+                        break;
+                    case RECEIVER_ACCOUNT_ID:
+                        if (value != JsonToken.VALUE_NUMBER_INT) {
+                            return null;
+                        }
+                        receiverAccountId = parser.getLongValue();
+                        break;
+                    case AMOUNT:
+                        amount = parseAmount(parser, value);
+                        if (amount == null) {
+                            return null;
+                        }
+                        break;
+                    default:
+                        // Unknown properties are ignored, as by the Spring Boot ObjectMapper
+                        parser.skipChildren();
+                        break;
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return null;
+            }
+        }
+
+        if (senderAccountId == null || receiverAccountId == null || amount == null || amount.signum() < 0) {
+            return null;
+        }
+        return new ValidatedRequest(senderAccountId, receiverAccountId, amount);
+    }
+
+    private static Money parseAmount(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT && value != JsonToken.VALUE_STRING) {
+            return null;
+        }
+        try {
+            return Money.parse(CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static int append(byte[] json, int position, byte[] fragment) {
+        System.arraycopy(fragment, 0, json, position, fragment.length);
+        return position + fragment.length;
+    }
+
+    private static int appendAscii(byte[] json, int position, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            json[position++] = (byte) value.charAt(i);
+        }
+        return position;
+    }
+}
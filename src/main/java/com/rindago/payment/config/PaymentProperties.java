@@ -0,0 +1,300 @@
+package com.rindago.payment.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@ConfigurationProperties(prefix = "payment")
+@Getter
+@Setter
+public class PaymentProperties {
+    /**
+     * How concurrent transfers touching the same account are serialized
+     */
+    private TransferMode transferMode = TransferMode.PESSIMISTIC;
+
+    /**
+     * Retry of transfers that lost an optimistic version check (OPTIMISTIC mode only)
+     */
+    private final Retry retry = new Retry();
+
+    /**
+     * Balance slots for hot receiver accounts
+     */
+    private final Sharding sharding = new Sharding();
+
+    private final Batch batch = new Batch();
+
+    /**
+     * Local cache of Idempotency-Key results, the unique key column stays authoritative
+     */
+    private final Idempotency idempotency = new Idempotency();
+
+    /**
+     * Local cache of account existence and balance, used to reject hopeless transfers before they reach the database
+     */
+    private final AccountCache accountCache = new AccountCache();
+
+    /**
+     * In-memory serialization of transfers per account before a connection is taken
+     */
+    private final Lanes lanes = new Lanes();
+
+    /**
+     * Concurrent transfers applied together in one database transaction, one commit for the whole group
+     */
+    private final GroupCommit groupCommit = new GroupCommit();
+
+    /**
+     * Threads serving HTTP requests and the number of them allowed into JDBC at once
+     */
+    private final Execution execution = new Execution();
+
+    private final Json json = new Json();
+
+    /**
+     * Payment history read API, GET /accounts/{id}/payments
+     */
+    private final History history = new History();
+
+    /**
+     * Accept-then-settle mode of POST /payment
+     */
+    private final Async async = new Async();
+
+    /**
+     * In-memory transfer engine, in-memory profile only
+     */
+    private final Engine engine = new Engine();
+
+    /**
+     * Scheduled check of account balances against payment history from per-account checkpoints
+     */
+    private final Reconciliation reconciliation = new Reconciliation();
+
+    public enum TransferMode {
+        /**
+         * Plain reads, Account version is checked on flush and conflicting transfer is retried
+         */
+        OPTIMISTIC,
+        /**
+         * Both account rows are locked with SELECT ... FOR UPDATE, lower id first
+         */
+        PESSIMISTIC,
+        /**
+         * No entity loading, balances are changed by conditional UPDATE statements, lower id first
+         */
+        ATOMIC_UPDATE
+    }
+
+    @Getter
+    @Setter
+    public static class Retry {
+        /**
+         * Total attempts including the first one
+         */
+        private int maxAttempts = 5;
+        private Duration initialBackoff = Duration.ofMillis(5);
+        private Duration maxBackoff = Duration.ofMillis(200);
+    }
+
+    @Getter
+    @Setter
+    public static class Sharding {
+        private boolean enabled = false;
+        /**
+         * Slots per hot account, credits are spread randomly between them
+         */
+        private int slots = 8;
+        private Set<Long> hotAccounts = new HashSet<>();
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        /**
+         * Payments per transaction in PARTIAL mode, also JDBC batch and flush size
+         */
+        private int chunkSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Idempotency {
+        private long cacheSize = 100_000;
+        private Duration cacheTtl = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Lanes {
+        private boolean enabled = false;
+        /**
+         * Transfers running at once is at most this many, keep it around the connection pool size
+         */
+        private int count = 32;
+        /**
+         * Wait for both lanes of a transfer, beyond that the request is answered with 503
+         */
+        private Duration acquireTimeout = Duration.ofSeconds(2);
+    }
+
+    @Getter
+    @Setter
+    public static class GroupCommit {
+        private boolean enabled = false;
+        /**
+         * How long the first transfer of a group waits for others to join, 0 groups only what is already queued
+         */
+        private Duration window = Duration.ofMillis(1);
+        /**
+         * Transfers per group, keep it at or below payment.batch.chunk-size so a group is one transaction
+         */
+        private int maxSize = 100;
+        /**
+         * Groups committing at once, each holds one connection
+         */
+        private int committers = 1;
+        private int queueCapacity = 10000;
+        /**
+         * Wait for the group to commit, beyond that the request fails while the transfer may still commit
+         */
+        private Duration timeout = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Reconciliation {
+        /**
+         * Scheduled runs, every payment.reconciliation.interval-ms. The endpoint runs it on demand either way
+         */
+        private boolean enabled = false;
+        /**
+         * Checkpoints stop this long before now, a transfer stamped earlier but still uncommitted would be missed for good
+         */
+        private Duration settleLag = Duration.ofMinutes(1);
+        /**
+         * Account id range reconciled in one transaction
+         */
+        private int chunkSize = 1000;
+        /**
+         * Chunks reconciled at once, each holds one connection
+         */
+        private int parallelism = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Execution {
+        private ExecutionMode mode = ExecutionMode.PLATFORM;
+        /**
+         * Callers holding a JDBC connection at once, 0 disables the limit. Keep it at or below the pool size
+         */
+        private int jdbcConcurrency = 0;
+        /**
+         * Wait for a free slot before the request fails instead of queueing unbounded
+         */
+        private Duration jdbcAcquireTimeout = Duration.ofSeconds(1);
+    }
+
+    public enum ExecutionMode {
+        /**
+         * Tomcat worker pool, server.tomcat.threads.max bounds concurrent requests
+         */
+        PLATFORM,
+        /**
+         * New virtual thread per request, needs a Java 21+ runtime. Pair with payment.execution.jdbc-concurrency
+         */
+        VIRTUAL
+    }
+
+    @Getter
+    @Setter
+    public static class Json {
+        /**
+         * Dedicated codec for POST /payment request and response, false falls back to the ObjectMapper and bean validation
+         */
+        private boolean fastPath = true;
+    }
+
+    @Getter
+    @Setter
+    public static class History {
+        private int defaultPageSize = 50;
+        /**
+         * Larger limit asked by the client is cut down to this
+         */
+        private int maxPageSize = 500;
+        /**
+         * Rows the JDBC driver fetches per round-trip while streaming an NDJSON export
+         */
+        private int exportFetchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Async {
+        /**
+         * POST /payment answers 202 once the request is stored, GET /payment/{id} reports the outcome
+         */
+        private boolean enabled = false;
+        /**
+         * Settlement workers, requests of one sender account always go to the same one
+         */
+        private int lanes = 8;
+        /**
+         * Accepted but not settled requests over all lanes, beyond that POST /payment answers 503
+         */
+        private int queueCapacity = 10_000;
+        /**
+         * Requests settled together in one transaction
+         */
+        private int batchSize = 100;
+        /**
+         * Wait before settling a batch again after a database failure
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+    }
+
+    @Getter
+    @Setter
+    public static class AccountCache {
+        private boolean enabled = true;
+        private long maximumSize = 100_000;
+        private Duration ttl = Duration.ofMinutes(1);
+        /**
+         * Missing account ids, short so that a newly opened account is usable soon
+         */
+        private Duration negativeTtl = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Engine {
+        /**
+         * Journal and snapshot files
+         */
+        private String directory = "data/engine";
+        /**
+         * Pending transfers, power of two
+         */
+        private int ringSize = 65536;
+        /**
+         * Journal file is mapped in regions of this many bytes
+         */
+        private long journalRegionSize = 64L * 1024 * 1024;
+        /**
+         * Transfers between snapshots, journal is started over after each snapshot
+         */
+        private long snapshotEvery = 1_000_000;
+        /**
+         * Answer only when account and payment tables show the transfer, otherwise once it is in the fsynced journal
+         */
+        private boolean ackAfterProjection = true;
+        private Duration timeout = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,63 @@
+package com.rindago.payment.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to a second database, enabled by payment.database.read-only.jdbc-url.
+ * The physical connection is taken lazily at the first statement, when the transaction is known to be read-only.
+ * Replica lag applies: anything read here may miss the latest transfers
+ */
+@Configuration
+@ConditionalOnProperty(name = "payment.database.read-only.jdbc-url")
+@Slf4j
+public class ReadOnlyRoutingConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource readWriteDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("payment.database.read-only")
+    public HikariDataSource readOnlyDataSource() {
+        return new HikariDataSource();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("readWriteDataSource") DataSource readWriteDataSource,
+                                 @Qualifier("readOnlyDataSource") DataSource readOnlyDataSource) {
+        ReadOnlyRoutingDataSource routing = new ReadOnlyRoutingDataSource();
+        routing.setTargetDataSources(Map.of(Route.READ_WRITE, readWriteDataSource, Route.READ_ONLY, readOnlyDataSource));
+        routing.setDefaultTargetDataSource(readWriteDataSource);
+        routing.afterPropertiesSet();
+        log.info("Read-only transactions are routed to a separate database");
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    private enum Route {
+        READ_WRITE, READ_ONLY
+    }
+
+    private static class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.READ_ONLY : Route.READ_WRITE;
+        }
+    }
+}
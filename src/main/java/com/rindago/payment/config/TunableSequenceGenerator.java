@@ -0,0 +1,34 @@
+package com.rindago.payment.config;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Sequence generator with pooled-lo optimizer whose allocation size can be overridden from configuration:
+ * spring.jpa.properties.payment.id.increment-size.[sequence name]=100
+ * Sequence INCREMENT BY in the database has to be changed together with it.
+ */
+public class TunableSequenceGenerator extends SequenceStyleGenerator {
+    public static final String NAME = "com.rindago.payment.config.TunableSequenceGenerator";
+
+    private static final String INCREMENT_SIZE_PREFIX = "payment.id.increment-size.";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object incrementSize = serviceRegistry.getService(ConfigurationService.class).getSettings()
+                .get(INCREMENT_SIZE_PREFIX + params.getProperty(SEQUENCE_PARAM));
+        if (incrementSize != null) {
+            params.setProperty(INCREMENT_PARAM, incrementSize.toString());
+        }
+        if (!params.containsKey(OPT_PARAM)) {
+            params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        }
+        super.configure(type, params, serviceRegistry);
+    }
+}
@@ -0,0 +1,34 @@
+package com.rindago.payment.controller;
+
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.service.BatchPaymentService;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+import java.util.List;
+
+@RestController
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@RequiredArgsConstructor
+public class BatchPaymentController {
+
+    private final BatchPaymentService batchPaymentService;
+
+    @PostMapping("/payments/batch")
+    public ResponseEntity<List<BatchPaymentService.ItemResult>> makePayments(@Valid @RequestBody BatchPaymentRequestDTO batchRequestDTO) {
+
+        List<BatchPaymentService.ItemResult> results = batchPaymentService.performBatch(
+                batchRequestDTO.getPayments(),
+                batchRequestDTO.getMode()
+        );
+
+        return ResponseEntity.ok()
+                .body(results);
+    }
+}
@@ -3,12 +3,18 @@ package com.rindago.payment.controller;
 import com.rindago.payment.error.ErrorInfo;
 import com.rindago.payment.error.ErrorMessage;
 import com.rindago.payment.error.ErrorType;
+import com.rindago.payment.exceptions.OutcomeUnknownException;
+import com.rindago.payment.exceptions.OverloadedException;
 import com.rindago.payment.exceptions.TransactionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -19,13 +25,24 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
 @RequiredArgsConstructor
 @Slf4j
 public class ExceptionController {
+    private static final int MAX_CACHED_MESSAGES = 16;
+    private static final long REJECTION_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final MessageSource messageSource;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<TransactionException.TransactionErrorCode, Rejections> rejections = new ConcurrentHashMap<>();
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -38,6 +55,7 @@ public class ExceptionController {
                 .collect(Collectors.toList());
 
         log.error("Request error {}", errors);
+        errors.forEach(error -> countError(ErrorType.VALIDATION_ERROR, error.getField()));
 
         return ErrorMessage.builder()
                 .type(ErrorType.VALIDATION_ERROR)
@@ -45,23 +63,64 @@ public class ExceptionController {
                 .build();
     }
 
+    /**
+     * Rejections are a large share of traffic: body and counter come from a cache, logging is rate limited
+     */
     @ExceptionHandler(TransactionException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ResponseBody
     public ErrorMessage processTransactionError(TransactionException ex) {
-        ErrorInfo errorInfo = ErrorInfo.builder()
-                .message(ex.getMessage())
-                .code(ex.getErrorCode())
-                .build();
+        Rejections ofCode = rejections(ex.getCode());
+        ofCode.counter.increment();
+        ofCode.log(ex);
+        return ofCode.body(ex);
+    }
 
-        log.error("Request error {}", errorInfo);
+    @ExceptionHandler(OverloadedException.class)
+    @ResponseBody
+    public ResponseEntity<ErrorMessage> processOverloadedError(OverloadedException ex) {
+        countError(ErrorType.OVERLOADED, null);
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(ErrorMessage.builder()
+                        .type(ErrorType.OVERLOADED)
+                        .errors(List.of(ErrorInfo.builder().message(ex.getMessage()).build()))
+                        .build());
+    }
+
+    /**
+     * No Retry-After, sending the transfer again may apply it twice
+     */
+    @ExceptionHandler(OutcomeUnknownException.class)
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    @ResponseBody
+    public ErrorMessage processOutcomeUnknownError(OutcomeUnknownException ex) {
+        log.warn("Request timed out, outcome unknown: {}", ex.getMessage());
+        countError(ErrorType.OUTCOME_UNKNOWN, null);
 
         return ErrorMessage.builder()
-                .type(ErrorType.TRANSACTION_ERROR)
-                .errors(List.of(errorInfo))
+                .type(ErrorType.OUTCOME_UNKNOWN)
+                .errors(List.of(ErrorInfo.builder().message(ex.getMessage()).build()))
                 .build();
     }
 
+    private Rejections rejections(TransactionException.TransactionErrorCode code) {
+        Rejections cached = rejections.get(code);
+        if (cached != null) {
+            return cached;
+        }
+        return rejections.computeIfAbsent(code, key -> new Rejections(key,
+                meterRegistry.counter("payment.errors", "type", ErrorType.TRANSACTION_ERROR.name(), "code", key.name())));
+    }
+
+    /**
+     * @param code transaction error code or the invalid field, both are bounded sets
+     */
+    private void countError(ErrorType type, String code) {
+        meterRegistry.counter("payment.errors", "type", type.name(), "code", code == null ? "none" : code).increment();
+    }
+
     private ErrorInfo processFieldError(FieldError error) {
         if (error == null) {
             return null;
@@ -75,4 +134,53 @@ public class ExceptionController {
                 .code(error.getDefaultMessage())
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Counter, log rate limit and immutable error bodies of one code
+     */
+    private static class Rejections {
+        private final TransactionException.TransactionErrorCode code;
+        private final Counter counter;
+        private final ConcurrentMap<String, ErrorMessage> bodies = new ConcurrentHashMap<>();
+        private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+        private final LongAdder unlogged = new LongAdder();
+
+        private Rejections(TransactionException.TransactionErrorCode code, Counter counter) {
+            this.code = code;
+            this.counter = counter;
+        }
+
+        private ErrorMessage body(TransactionException ex) {
+            String message = ex.getMessage() == null ? "" : ex.getMessage();
+            ErrorMessage body = bodies.get(message);
+            if (body != null) {
+                return body;
+            }
+            body = ErrorMessage.builder()
+                    .type(ErrorType.TRANSACTION_ERROR)
+                    .errors(List.of(ErrorInfo.builder()
+                            .message(ex.getMessage())
+                            .code(code.name())
+                            .build()))
+                    .build();
+            // Messages are constants, the bound only guards against one built from request data
+            if (bodies.size() < MAX_CACHED_MESSAGES) {
+                bodies.putIfAbsent(message, body);
+            }
+            return body;
+        }
+
+        /**
+         * At most once per second, with the number of rejections since the previous line
+         */
+        private void log(TransactionException ex) {
+            unlogged.increment();
+            long now = System.nanoTime();
+            long next = nextLogNanos.get();
+            if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + REJECTION_LOG_INTERVAL_NANOS)) {
+                return;
+            }
+            log.info("Request rejected with {} '{}', {} times since last logged", code, ex.getMessage(), unlogged.sumThenReset());
+        }
+    }
+}
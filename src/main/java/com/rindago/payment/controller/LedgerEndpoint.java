@@ -0,0 +1,32 @@
+package com.rindago.payment.controller;
+
+import com.rindago.payment.service.LedgerService;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/ledger verifies account balances against the ledger, POST rebuilds drifted ones
+ */
+@Component
+@Endpoint(id = "ledger")
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@RequiredArgsConstructor
+public class LedgerEndpoint {
+
+    private final LedgerService ledgerService;
+
+    @ReadOperation
+    public LedgerService.Verification verify() {
+        return ledgerService.verify();
+    }
+
+    @WriteOperation
+    public LedgerService.Verification rebuild() {
+        return ledgerService.rebuild();
+    }
+}
@@ -1,31 +1,69 @@
 package com.rindago.payment.controller;
 
+import com.rindago.payment.config.PaymentJsonConverter;
 import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.dto.PaymentStatusDTO;
+import com.rindago.payment.service.AsyncPaymentService;
 import com.rindago.payment.service.PaymentService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.net.URI;
 
 @RestController
 @RequiredArgsConstructor
 public class PaymentController {
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
 
     private final PaymentService paymentService;
+    /**
+     * Present when payment.async.enabled is set
+     */
+    private final ObjectProvider<AsyncPaymentService> asyncPaymentService;
+
+    /**
+     * Requests read by {@link PaymentJsonConverter} are checked already
+     */
+    @InitBinder("paymentRequestDTO")
+    public void skipValidatedRequest(WebDataBinder binder) {
+        if (binder.getTarget() instanceof PaymentJsonConverter.ValidatedRequest) {
+            binder.replaceValidators();
+        }
+    }
 
     @PostMapping("/payment")
-    public ResponseEntity<PaymentService.Transaction> makePayment(@Valid @RequestBody PaymentRequestDTO paymentRequestDTO) {
+    public ResponseEntity<?> makePayment(@Valid @RequestBody PaymentRequestDTO paymentRequestDTO,
+                                         @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+
+        AsyncPaymentService async = asyncPaymentService.getIfAvailable();
+        if (async != null) {
+            PaymentStatusDTO status = async.accept(paymentRequestDTO, idempotencyKey);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/payment/" + status.getRequestId()))
+                    .body(status);
+        }
 
         PaymentService.Transaction transaction = paymentService.performTransaction(
                 paymentRequestDTO.getAmount(),
                 paymentRequestDTO.getSenderAccountId(),
-                paymentRequestDTO.getReceiverAccountId()
+                paymentRequestDTO.getReceiverAccountId(),
+                idempotencyKey
         );
 
         return ResponseEntity.ok()
                 .body(transaction);
     }
+
+    @GetMapping("/payment/{requestId}")
+    public ResponseEntity<PaymentStatusDTO> getPayment(@PathVariable Long requestId) {
+        AsyncPaymentService async = asyncPaymentService.getIfAvailable();
+        if (async == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.of(async.status(requestId));
+    }
 }
@@ -0,0 +1,73 @@
+package com.rindago.payment.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rindago.payment.dto.PaymentHistoryItemDTO;
+import com.rindago.payment.dto.PaymentHistoryPageDTO;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentHistoryService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+public class PaymentHistoryController {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final PaymentHistoryService paymentHistoryService;
+    private final AccountRepository accountRepository;
+    private final ObjectMapper mapper;
+    /**
+     * Flushing after every row would turn each one into its own network write
+     */
+    private final ObjectWriter itemWriter;
+
+    public PaymentHistoryController(PaymentHistoryService paymentHistoryService,
+                                    AccountRepository accountRepository,
+                                    ObjectMapper mapper) {
+        this.paymentHistoryService = paymentHistoryService;
+        this.accountRepository = accountRepository;
+        this.mapper = mapper;
+        this.itemWriter = mapper.writerFor(PaymentHistoryItemDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GetMapping(value = "/accounts/{accountId}/payments", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PaymentHistoryPageDTO> getPayments(@PathVariable Long accountId,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestParam(required = false) Integer limit) {
+        if (!accountRepository.existsById(accountId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(paymentHistoryService.page(accountId, cursor, limit));
+    }
+
+    /**
+     * Whole history as one JSON object per line, written while the rows are read
+     */
+    @GetMapping(value = "/accounts/{accountId}/payments/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPayments(@PathVariable Long accountId) {
+        if (!accountRepository.existsById(accountId)) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                // Lines are separated by the newline below, not by the default space between root values
+                generator.setRootValueSeparator(null);
+                paymentHistoryService.export(accountId, item -> {
+                    itemWriter.writeValue(generator, item);
+                    generator.writeRaw('\n');
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+}
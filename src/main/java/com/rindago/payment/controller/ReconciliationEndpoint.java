@@ -0,0 +1,32 @@
+package com.rindago.payment.controller;
+
+import com.rindago.payment.service.ReconciliationService;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/reconciliation returns the last reconciliation run (404 before the first one), POST runs one now
+ */
+@Component
+@Endpoint(id = "reconciliation")
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@RequiredArgsConstructor
+public class ReconciliationEndpoint {
+
+    private final ReconciliationService reconciliationService;
+
+    @ReadOperation
+    public ReconciliationService.Reconciliation last() {
+        return reconciliationService.getLast();
+    }
+
+    @WriteOperation
+    public ReconciliationService.Reconciliation reconcile() {
+        return reconciliationService.reconcile();
+    }
+}
@@ -1,35 +1,59 @@
 package com.rindago.payment.domain;
 
-import com.rindago.payment.config.Constants;
+import com.rindago.payment.config.TunableSequenceGenerator;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
-import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.NotNull;
-import javax.validation.constraints.Pattern;
+import javax.validation.constraints.PositiveOrZero;
 import javax.validation.constraints.Size;
-import java.math.BigDecimal;
 
 @Entity
 @Table(name = "account")
-@AllArgsConstructor
 @NoArgsConstructor
 @Getter
 @Setter
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-    @SequenceGenerator(name = "sequenceGenerator")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accountSequence")
+    @GenericGenerator(name = "accountSequence", strategy = TunableSequenceGenerator.NAME, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "account_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
     private Long id;
 
     @NotNull
-    @Pattern(regexp = Constants.NAME_REGEX)
+    @AccountName
     @Size(min = 1, max = 50)
-    @Column(length = 50, unique = true, nullable = false)
+    @Column(length = 50, unique = true, nullable = false, updatable = false)
     private String name;
 
+    /**
+     * Balance kept on the account row, a hot account has the rest in its balance slots, see ShardedBalanceService#balance
+     */
     @NotNull
-    @DecimalMin(value = "0")
+    @PositiveOrZero
     @Column(precision = 18, scale = 2, nullable = false)
-    private BigDecimal balance;
+    private Money balance;
+
+    /**
+     * Balance the account was opened with, the ledger holds every change since
+     */
+    @NotNull
+    @Column(precision = 18, scale = 2, nullable = false, updatable = false)
+    private Money openingBalance = Money.ZERO;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    public Account(Long id, String name, Money balance) {
+        this.id = id;
+        this.name = name;
+        this.balance = balance;
+        this.openingBalance = balance;
+    }
 }
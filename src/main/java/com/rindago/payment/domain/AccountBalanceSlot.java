@@ -0,0 +1,41 @@
+package com.rindago.payment.domain;
+
+import com.rindago.payment.config.TunableSequenceGenerator;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+/**
+ * Part of a hot account balance. Credits are spread across slots so they do not queue on the account row
+ */
+@Entity
+@Table(name = "account_balance_slot", uniqueConstraints = @UniqueConstraint(columnNames = {"account_id", "slot"}))
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class AccountBalanceSlot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accountBalanceSlotSequence")
+    @GenericGenerator(name = "accountBalanceSlotSequence", strategy = TunableSequenceGenerator.NAME, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "account_balance_slot_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
+    private Long id;
+
+    @NotNull
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private int slot;
+
+    @NotNull
+    @Column(precision = 18, scale = 2, nullable = false)
+    private BigDecimal balance;
+}
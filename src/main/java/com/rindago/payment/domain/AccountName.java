@@ -0,0 +1,25 @@
+package com.rindago.payment.domain;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Account name, the language of {@link com.rindago.payment.config.Constants#NAME_REGEX} checked by a single pass
+ * over the characters instead of the regex engine, null is valid
+ */
+@Documented
+@Constraint(validatedBy = AccountNameValidator.class)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AccountName {
+    String message() default "must be a name of letters, digits and _.@- or an e-mail like name";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+}
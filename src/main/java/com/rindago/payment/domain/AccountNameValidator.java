@@ -0,0 +1,86 @@
+package com.rindago.payment.domain;
+
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+/**
+ * Hand-written matcher of {@link com.rindago.payment.config.Constants#NAME_REGEX}, time is linear in the name length
+ * whatever the input, no backtracking and no allocation. Accepts either
+ * <ul>
+ *     <li>plain name: one or more of {@code [_.@A-Za-z0-9-]}</li>
+ *     <li>e-mail like name: one or more of {@code [a-zA-Z0-9!$&*+=?^_`{|}~.-]}, {@code @}, then dot separated
+ *     non-empty labels of {@code [a-zA-Z0-9-]}</li>
+ * </ul>
+ */
+public class AccountNameValidator implements ConstraintValidator<AccountName, CharSequence> {
+    private static final boolean[] PLAIN = chars("_.@-");
+    private static final boolean[] LOCAL = chars("!$&*+=?^_`{|}~.-");
+    private static final boolean[] LABEL = chars("-");
+
+    @Override
+    public boolean isValid(CharSequence name, ConstraintValidatorContext context) {
+        return name == null || isValidName(name);
+    }
+
+    public static boolean isValidName(CharSequence name) {
+        return name.length() > 0 && (isPlain(name) || isEmailLike(name));
+    }
+
+    private static boolean isPlain(CharSequence name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!in(PLAIN, name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmailLike(CharSequence name) {
+        int length = name.length();
+        int i = 0;
+        while (i < length && in(LOCAL, name.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i == length || name.charAt(i) != '@') {
+            return false;
+        }
+
+        int labelLength = 0;
+        for (i++; i < length; i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                if (labelLength == 0) {
+                    return false;
+                }
+                labelLength = 0;
+            } else if (in(LABEL, c)) {
+                labelLength++;
+            } else {
+                return false;
+            }
+        }
+        return labelLength > 0;
+    }
+
+    private static boolean in(boolean[] table, char c) {
+        return c < table.length && table[c];
+    }
+
+    /**
+     * ASCII letters and digits plus the given characters
+     */
+    private static boolean[] chars(String extra) {
+        boolean[] table = new boolean[128];
+        for (char c = 'a'; c <= 'z'; c++) {
+            table[c] = true;
+            table[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            table[c] = true;
+        }
+        for (int i = 0; i < extra.length(); i++) {
+            table[extra.charAt(i)] = true;
+        }
+        return table;
+    }
+}
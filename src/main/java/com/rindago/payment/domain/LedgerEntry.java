@@ -0,0 +1,49 @@
+package com.rindago.payment.domain;
+
+import com.rindago.payment.config.TunableSequenceGenerator;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One side of a payment: negative amount on the sender, positive on the receiver.
+ * Rows are only ever inserted, account balance = opening balance + sum of its entries
+ */
+@Entity
+@Immutable
+@Table(name = "ledger_entry", indexes = @Index(name = "ledger_entry_account_idx", columnList = "account_id"))
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class LedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledgerEntrySequence")
+    @GenericGenerator(name = "ledgerEntrySequence", strategy = TunableSequenceGenerator.NAME, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "ledger_entry_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
+    private Long id;
+
+    @NotNull
+    @Column(name = "payment_id", nullable = false, updatable = false)
+    private Long paymentId;
+
+    @NotNull
+    @Column(name = "account_id", nullable = false, updatable = false)
+    private Long accountId;
+
+    @NotNull
+    @Column(precision = 18, scale = 2, nullable = false, updatable = false)
+    private BigDecimal amount;
+
+    @NotNull
+    @Column(nullable = false, updatable = false)
+    private Instant timestamp;
+}
@@ -0,0 +1,167 @@
+package com.rindago.payment.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Amount of money in cents, same scale as the NUMERIC(18, 2) columns. Arithmetic fails on overflow instead of wrapping.
+ * Extends {@link Number} so the standard bean validation constraints apply
+ */
+public final class Money extends Number implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long CENTS_PER_UNIT = 100;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    public static Money valueOf(long units) {
+        return ofCents(Math.multiplyExact(units, CENTS_PER_UNIT));
+    }
+
+    /**
+     * @throws ArithmeticException when amount has more than two decimal places or does not fit
+     */
+    public static Money of(BigDecimal amount) {
+        return ofCents(amount.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parses a plain decimal like {@code -12.3} or {@code 100.00} without going through BigDecimal
+     *
+     * @throws NumberFormatException when text is not a decimal with at most two decimal places
+     */
+    public static Money parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    private static Money parse(CharSequence text, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int integerStart = i;
+        long units = 0;
+        for (; i < end && isDigit(text.charAt(i)); i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), text.charAt(i) - '0');
+        }
+        if (i == integerStart) {
+            throw invalid(text, offset, length);
+        }
+        long fraction = 0;
+        if (i < end && text.charAt(i) == '.') {
+            int fractionStart = ++i;
+            for (; i < end && i - fractionStart < SCALE && isDigit(text.charAt(i)); i++) {
+                fraction = fraction * 10 + (text.charAt(i) - '0');
+            }
+            if (i == fractionStart) {
+                throw invalid(text, offset, length);
+            }
+            if (i - fractionStart == 1) {
+                fraction *= 10;
+            }
+        }
+        if (i != end) {
+            throw invalid(text, offset, length);
+        }
+        long cents = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), fraction);
+        return ofCents(negative ? -cents : cents);
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public Money min(Money other) {
+        return cents <= other.cents ? this : other;
+    }
+
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return cents > other.cents;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    /**
+     * Whole units, fraction is truncated
+     */
+    @Override
+    public long longValue() {
+        return cents / CENTS_PER_UNIT;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Always two decimal places, e.g. {@code -0.05}
+     */
+    @Override
+    public String toString() {
+        long absolute = Math.abs(cents);
+        long fraction = absolute % CENTS_PER_UNIT;
+        return (cents < 0 ? "-" : "") + absolute / CENTS_PER_UNIT + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException invalid(CharSequence text, int offset, int length) {
+        return new NumberFormatException("Not an amount with at most " + SCALE + " decimal places: " + text.subSequence(offset, offset + length));
+    }
+}
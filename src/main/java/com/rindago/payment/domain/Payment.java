@@ -1,33 +1,58 @@
 package com.rindago.payment.domain;
 
+import com.rindago.payment.config.TunableSequenceGenerator;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.time.Instant;
 
 @Entity
-@Table(name = "payment")
+// Covering history indexes, same as schema.sql, the table is recreated by Hibernate outside the production profile
+@Table(name = "payment", indexes = {
+        @Index(name = "payment_sender_history_idx", columnList = "sender_account_id, timestamp, id, receiver_account_id, amount"),
+        @Index(name = "payment_receiver_history_idx", columnList = "receiver_account_id, timestamp, id, sender_account_id, amount")
+})
 @Getter
 @Setter
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Payment {
+    public static final int IDEMPOTENCY_KEY_LENGTH = 64;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-    @SequenceGenerator(name = "sequenceGenerator")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paymentSequence")
+    @GenericGenerator(name = "paymentSequence", strategy = TunableSequenceGenerator.NAME, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "payment_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
     private Long id;
 
-    @ManyToOne(optional = false)
+    /**
+     * Lazy, a payment is written with references and read through projections, getId() does not load the account
+     */
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "sender_account_id")
     @NotNull
     private Account senderAccount;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "receiver_account_id")
     @NotNull
     private Account receiverAccount;
 
+    @NotNull
+    @Column(precision = 18, scale = 2, nullable = false)
+    private Money amount;
+
     @NotNull
     @Column(nullable = false)
     private Instant timestamp;
+
+    @Column(length = IDEMPOTENCY_KEY_LENGTH, unique = true)
+    private String idempotencyKey;
 }
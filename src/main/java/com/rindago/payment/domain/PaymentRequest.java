@@ -0,0 +1,73 @@
+package com.rindago.payment.domain;
+
+import com.rindago.payment.config.TunableSequenceGenerator;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
+
+/**
+ * Accepted payment waiting for settlement in async mode. Settled in the same transaction as its payment,
+ * so requests still {@link Status#ACCEPTED} after a restart are exactly the ones to settle again
+ */
+@Entity
+@Table(name = "payment_request", indexes = @Index(name = "payment_request_status_idx", columnList = "status, id"))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentRequest {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paymentRequestSequence")
+    @GenericGenerator(name = "paymentRequestSequence", strategy = TunableSequenceGenerator.NAME, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "payment_request_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
+    private Long id;
+
+    @NotNull
+    @Column(nullable = false, updatable = false)
+    private Long senderAccountId;
+
+    @NotNull
+    @Column(nullable = false, updatable = false)
+    private Long receiverAccountId;
+
+    @NotNull
+    @Column(precision = 18, scale = 2, nullable = false, updatable = false)
+    private Money amount;
+
+    @Column(length = Payment.IDEMPOTENCY_KEY_LENGTH, unique = true, updatable = false)
+    private String idempotencyKey;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Status status;
+
+    @NotNull
+    @Column(nullable = false, updatable = false)
+    private Instant acceptedAt;
+
+    private Instant settledAt;
+
+    /**
+     * Set when settled
+     */
+    private Long paymentId;
+
+    /**
+     * Set when rejected
+     */
+    @Column(length = 32)
+    private String errorCode;
+
+    public enum Status {
+        ACCEPTED, SETTLED, REJECTED
+    }
+}
@@ -0,0 +1,9 @@
+package com.rindago.payment.domain;
+
+/**
+ * Validation group checked when Hibernate flushes an update of a managed entity, entities are validated with the
+ * default group on persist only. Nothing belongs to it today: account names are not updatable and balance changes
+ * are guarded by the transfer checks, validating the whole account on every balance update only cost time
+ */
+public interface UpdateConstraints {
+}
@@ -0,0 +1,35 @@
+package com.rindago.payment.dto;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class BatchPaymentRequestDTO {
+    @NotNull
+    private Mode mode = Mode.ALL_OR_NOTHING;
+
+    @NotNull
+    @Size(min = 1, max = 100000)
+    @Valid
+    private List<PaymentRequestDTO> payments;
+
+    public enum Mode {
+        /**
+         * Single database transaction, any rejected payment rolls back the whole batch
+         */
+        ALL_OR_NOTHING,
+        /**
+         * Transaction per chunk, rejected payments are skipped
+         */
+        PARTIAL
+    }
+}
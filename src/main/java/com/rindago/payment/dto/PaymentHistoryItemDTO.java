@@ -0,0 +1,23 @@
+package com.rindago.payment.dto;
+
+import com.rindago.payment.domain.Money;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class PaymentHistoryItemDTO {
+    private Long transactionId;
+
+    private Long senderAccountId;
+
+    private Long receiverAccountId;
+
+    private Money amount;
+
+    private Instant timestamp;
+}
@@ -0,0 +1,24 @@
+package com.rindago.payment.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentHistoryPageDTO {
+    /**
+     * Newest first
+     */
+    private List<PaymentHistoryItemDTO> items;
+
+    /**
+     * Opaque, pass as cursor to get the next page. Absent on the last page
+     */
+    private String nextCursor;
+}
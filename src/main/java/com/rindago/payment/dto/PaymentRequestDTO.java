@@ -1,13 +1,13 @@
 package com.rindago.payment.dto;
 
 
+import com.rindago.payment.domain.Money;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
-import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
-import java.math.BigDecimal;
+import javax.validation.constraints.PositiveOrZero;
 
 @AllArgsConstructor
 @NoArgsConstructor
@@ -19,7 +19,10 @@ public class PaymentRequestDTO {
     @NotNull
     private  Long receiverAccountId;
 
+    /**
+     * At most two decimal places, more is rejected when the body is read
+     */
     @NotNull
-    @Min(value = 0)
-    private BigDecimal amount;
+    @PositiveOrZero
+    private Money amount;
 }
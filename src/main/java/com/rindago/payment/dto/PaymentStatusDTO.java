@@ -0,0 +1,36 @@
+package com.rindago.payment.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.rindago.payment.domain.PaymentRequest;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentStatusDTO {
+    private Long requestId;
+
+    private PaymentRequest.Status status;
+
+    /**
+     * Settled requests only
+     */
+    private Long transactionId;
+
+    private Instant timestamp;
+
+    /**
+     * Rejected requests only, same codes as the synchronous API
+     */
+    private String errorCode;
+
+    public static PaymentStatusDTO of(PaymentRequest request) {
+        return new PaymentStatusDTO(request.getId(), request.getStatus(), request.getPaymentId(),
+                request.getSettledAt() != null ? request.getSettledAt() : request.getAcceptedAt(), request.getErrorCode());
+    }
+}
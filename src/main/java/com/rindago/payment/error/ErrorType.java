@@ -5,5 +5,7 @@ public enum ErrorType {
     SERVER_ERROR,
     NOT_FOUND,
     FORBIDDEN,
-    TRANSACTION_ERROR
+    TRANSACTION_ERROR,
+    OVERLOADED,
+    OUTCOME_UNKNOWN
 }
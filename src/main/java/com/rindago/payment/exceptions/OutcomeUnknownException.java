@@ -0,0 +1,12 @@
+package com.rindago.payment.exceptions;
+
+/**
+ * Request stopped waiting while the transfer may still be applied, client should check the payment history before
+ * sending it again
+ */
+public class OutcomeUnknownException extends RuntimeException {
+
+    public OutcomeUnknownException(String message) {
+        super(message);
+    }
+}
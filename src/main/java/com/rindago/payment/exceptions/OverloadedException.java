@@ -0,0 +1,19 @@
+package com.rindago.payment.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Request is refused because too much work is already queued, client should retry later
+ */
+@Getter
+public class OverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public OverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
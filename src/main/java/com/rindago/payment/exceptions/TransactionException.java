@@ -5,19 +5,25 @@ import lombok.Getter;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+/**
+ * Business rejection of a transfer, answered with 400. These are frequent and never need a stack trace,
+ * so none is captured. Keep the message free of request data, error bodies are cached per code and message
+ */
 @ResponseStatus(value = HttpStatus.BAD_REQUEST)
 @Getter
 public class TransactionException extends RuntimeException {
 
+    private final TransactionErrorCode code;
     private final String errorCode;
 
     public TransactionException(String message, TransactionErrorCode errorCode) {
-        super(message);
+        super(message, null, false, false);
+        this.code = errorCode;
         this.errorCode = errorCode.name();
     }
 
 
     public  enum TransactionErrorCode{
-        NOT_FOUND_OWNER, NOT_ENOUGH_AMOUNT, ZERO_AMOUNT
+        NOT_FOUND_OWNER, NOT_ENOUGH_AMOUNT, ZERO_AMOUNT, CONCURRENT_UPDATE, BATCH_ROLLED_BACK, INVALID_IDEMPOTENCY_KEY, INVALID_PAGE_CURSOR
     }
 }
@@ -0,0 +1,37 @@
+package com.rindago.payment.repository;
+
+import com.rindago.payment.domain.AccountBalanceSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface AccountBalanceSlotRepository extends JpaRepository<AccountBalanceSlot, Long> {
+
+    List<AccountBalanceSlot> findByAccountIdOrderBySlot(Long accountId);
+
+    @Query("select coalesce(sum(s.balance), 0) from AccountBalanceSlot s where s.accountId = :accountId")
+    BigDecimal sumByAccountId(@Param("accountId") Long accountId);
+
+    @Query("select distinct s.accountId from AccountBalanceSlot s")
+    List<Long> findShardedAccountIds();
+
+    /**
+     * @return 0 when slot does not exist
+     */
+    @Modifying
+    @Query("update AccountBalanceSlot s set s.balance = s.balance + :amount where s.accountId = :accountId and s.slot = :slot")
+    int credit(@Param("accountId") Long accountId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    /**
+     * @return 0 when slot balance is not enough
+     */
+    @Modifying
+    @Query("update AccountBalanceSlot s set s.balance = s.balance - :amount where s.id = :id and s.balance >= :amount")
+    int take(@Param("id") Long id, @Param("amount") BigDecimal amount);
+}
@@ -2,9 +2,66 @@ package com.rindago.payment.repository;
 
 
 import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface AccountRepository  extends JpaRepository<Account, Long> {
+
+    /**
+     * Loads account and holds row lock until the end of the current transaction.
+     * Lock wait is bounded by javax.persistence.lock.timeout (see payment.lock-timeout-ms)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.id = :id")
+    Optional<Account> findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Row balance only, without hot account slots
+     */
+    @Query("select a.balance from Account a where a.id = :id")
+    Optional<Money> findRowBalanceById(@Param("id") Long id);
+
+    /**
+     * Must be consumed inside a transaction and closed, detach accounts once processed
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select a from Account a order by a.id")
+    Stream<Account> streamAllByOrderById();
+
+    /**
+     * Locks all accounts in one statement, rows are visited in id order
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.id in :ids order by a.id")
+    List<Account> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Conditional debit in one statement, version is bumped so optimistic readers see the change.
+     *
+     * @return 0 when account does not exist or balance is not enough
+     */
+    @Modifying
+    @Query("update Account a set a.balance = a.balance - :amount, a.version = a.version + 1 where a.id = :id and a.balance >= :amount")
+    int withdraw(@Param("id") Long id, @Param("amount") Money amount);
+
+    /**
+     * @return 0 when account does not exist
+     */
+    @Modifying
+    @Query("update Account a set a.balance = a.balance + :amount, a.version = a.version + 1 where a.id = :id")
+    int deposit(@Param("id") Long id, @Param("amount") Money amount);
 }
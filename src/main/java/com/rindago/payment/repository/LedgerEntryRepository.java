@@ -0,0 +1,32 @@
+package com.rindago.payment.repository;
+
+import com.rindago.payment.domain.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    @Query("select coalesce(sum(e.amount), 0) from LedgerEntry e where e.accountId = :accountId")
+    BigDecimal sumByAccountId(@Param("accountId") Long accountId);
+
+    /**
+     * Ledger total per account, in account id order. Must be consumed inside a transaction and closed
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select e.accountId as accountId, sum(e.amount) as total from LedgerEntry e group by e.accountId order by e.accountId")
+    Stream<AccountTotal> streamTotalsByAccount();
+
+    interface AccountTotal {
+        Long getAccountId();
+
+        BigDecimal getTotal();
+    }
+}
@@ -1,9 +1,35 @@
 package com.rindago.payment.repository;
 
+import com.rindago.payment.domain.Money;
 import com.rindago.payment.domain.Payment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Optional;
+
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
+
+    /**
+     * Result and request of a payment, account ids come from the foreign keys, no entity or account is loaded
+     */
+    @Query("select p.id as id, p.timestamp as timestamp, p.amount as amount,"
+            + " p.senderAccount.id as senderAccountId, p.receiverAccount.id as receiverAccountId"
+            + " from Payment p where p.idempotencyKey = :idempotencyKey")
+    Optional<TransactionView> findTransactionByIdempotencyKey(@Param("idempotencyKey") String idempotencyKey);
+
+    interface TransactionView {
+        Long getId();
+
+        Instant getTimestamp();
+
+        Money getAmount();
+
+        Long getSenderAccountId();
+
+        Long getReceiverAccountId();
+    }
 }
@@ -0,0 +1,16 @@
+package com.rindago.payment.repository;
+
+import com.rindago.payment.domain.PaymentRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PaymentRequestRepository extends JpaRepository<PaymentRequest, Long> {
+
+    Optional<PaymentRequest> findByIdempotencyKey(String idempotencyKey);
+
+    List<PaymentRequest> findByStatusOrderById(PaymentRequest.Status status);
+}
@@ -0,0 +1,181 @@
+package com.rindago.payment.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Read-through cache of account existence and row balance, missing ids are cached too.
+ * Only used to reject transfers early, a transfer that passes is still checked against the locked or updated row.
+ * A committed transfer turns the cached balance into unknown. Writers outside this node (another instance, a manual
+ * update) do not, so a cached balance too low for a transfer is read again before the transfer is rejected on it.
+ * A committed account insert drops a cached "missing" entry. Hit, miss and eviction counts are published as payment.account.cache
+ */
+@Component
+@Profile("!" + InMemoryPaymentService.PROFILE)
+public class AccountCache {
+
+    private final AccountRepository accountRepository;
+    private final ShardedBalanceService shardedBalanceService;
+    private final boolean enabled;
+    private final Cache<Long, Entry> accounts;
+
+    public AccountCache(AccountRepository accountRepository,
+                        ShardedBalanceService shardedBalanceService,
+                        PaymentProperties paymentProperties,
+                        MeterRegistry meterRegistry,
+                        EntityManagerFactory entityManagerFactory) {
+        this.accountRepository = accountRepository;
+        this.shardedBalanceService = shardedBalanceService;
+        PaymentProperties.AccountCache properties = paymentProperties.getAccountCache();
+        this.enabled = properties.isEnabled();
+        this.accounts = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new EntryExpiry(properties.getTtl().toNanos(), properties.getNegativeTtl().toNanos()))
+                .recordStats()
+                .<Long, Entry>build(), "payment.account.cache");
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_COMMIT_INSERT, new AccountCreated());
+    }
+
+    /**
+     * Same checks and order as the transfer itself
+     *
+     * @throws TransactionException when the cached state already rejects the transfer
+     */
+    public void precheck(Money amount, Long fromAccountId, Long toAccountId) {
+        if (!enabled) {
+            return;
+        }
+        Entry sender = accounts.get(fromAccountId, this::load);
+        if (!sender.exists) {
+            throw new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+        }
+        // Hot account balance is spread over slots, the row alone says nothing
+        if (sender.rowBalance != null && !shardedBalanceService.isSharded(fromAccountId) && amount.isGreaterThan(sender.rowBalance)) {
+            // Cached balance may be stale, only the current row rejects
+            Entry current = load(fromAccountId);
+            accounts.put(fromAccountId, current);
+            if (!current.exists) {
+                throw new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+            }
+            if (amount.isGreaterThan(current.rowBalance)) {
+                throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+            }
+        }
+        if (!accounts.get(toAccountId, this::load).exists) {
+            throw new TransactionException("Receiver account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+        }
+    }
+
+    /**
+     * Call after the change is committed. Existence stays cached, balance is not read again until it is needed
+     */
+    public void balanceChanged(Long accountId) {
+        accounts.asMap().computeIfPresent(accountId, (id, entry) -> entry.exists ? Entry.BALANCE_UNKNOWN : entry);
+    }
+
+    public void balancesChanged(Iterable<Long> accountIds) {
+        accountIds.forEach(this::balanceChanged);
+    }
+
+    /**
+     * Database rejected a debit, reading the balance again lets the next hopeless transfer stop here
+     */
+    public void balanceTooLow(Long accountId) {
+        accounts.invalidate(accountId);
+    }
+
+    private Entry load(Long accountId) {
+        return accountRepository.findRowBalanceById(accountId)
+                .map(balance -> new Entry(true, balance))
+                .orElse(Entry.MISSING);
+    }
+
+    /**
+     * Called after the insert is committed, a concurrent precheck can no longer cache the account as missing again
+     */
+    private final class AccountCreated implements PostCommitInsertEventListener {
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Account) {
+                accounts.invalidate(((Account) event.getEntity()).getId());
+            }
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.getMappedClass() == Account.class;
+        }
+
+        /**
+         * Still abstract in Hibernate 5.4, only called through the default {@link #requiresPostCommitHandling}
+         */
+        @Override
+        @Deprecated
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return requiresPostCommitHandling(persister);
+        }
+    }
+
+    private static final class Entry {
+        static final Entry MISSING = new Entry(false, null);
+        static final Entry BALANCE_UNKNOWN = new Entry(true, null);
+
+        final boolean exists;
+        final Money rowBalance;
+
+        Entry(boolean exists, Money rowBalance) {
+            this.exists = exists;
+            this.rowBalance = rowBalance;
+        }
+    }
+
+    private static final class EntryExpiry implements Expiry<Long, Entry> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        EntryExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Long accountId, Entry entry, long currentTime) {
+            return entry.exists ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long accountId, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(accountId, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long accountId, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.exceptions.OverloadedException;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes transfers per account in memory before they borrow a connection. Every account hashes to one of a fixed
+ * set of lanes, a transfer holds the lanes of both its accounts, lower lane first, so transfers between any accounts
+ * cannot deadlock. Threads waiting for a busy account wait here instead of on a row lock with a connection in hand.
+ * Hot accounts with balance slots are left out, their credits are meant to run in parallel
+ */
+@Component
+@Profile("!" + InMemoryPaymentService.PROFILE)
+public class AccountLanes {
+    private final boolean enabled;
+    private final ReentrantLock[] lanes;
+    private final long acquireTimeoutNanos;
+    private final Duration retryAfter;
+    private final ShardedBalanceService shardedBalanceService;
+    private final TransferMetrics transferMetrics;
+
+    public AccountLanes(PaymentProperties paymentProperties,
+                        ShardedBalanceService shardedBalanceService,
+                        TransferMetrics transferMetrics) {
+        PaymentProperties.Lanes properties = paymentProperties.getLanes();
+        this.enabled = properties.isEnabled();
+        this.lanes = new ReentrantLock[properties.getCount()];
+        for (int i = 0; i < lanes.length; i++) {
+            // Fair, a busy account should not starve the transfer that has waited longest
+            lanes[i] = new ReentrantLock(true);
+        }
+        this.acquireTimeoutNanos = properties.getAcquireTimeout().toNanos();
+        this.retryAfter = properties.getAcquireTimeout();
+        this.shardedBalanceService = shardedBalanceService;
+        this.transferMetrics = transferMetrics;
+    }
+
+    /**
+     * Runs the transfer while holding the lanes of both accounts
+     *
+     * @throws OverloadedException when the lanes are not free within payment.lanes.acquire-timeout
+     */
+    public <T> T callInLanes(Long fromAccountId, Long toAccountId, Supplier<T> transfer) {
+        if (!enabled) {
+            return transfer.get();
+        }
+        int first = laneOf(fromAccountId);
+        int second = laneOf(toAccountId);
+        if (first > second) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        Timer.Sample wait = transferMetrics.start();
+        acquire(first, deadline);
+        try {
+            if (second != first) {
+                acquire(second, deadline);
+            }
+            transferMetrics.stopPhase(wait, TransferMetrics.Phase.LANE);
+            try {
+                return transfer.get();
+            } finally {
+                if (second != first) {
+                    release(second);
+                }
+            }
+        } finally {
+            release(first);
+        }
+    }
+
+    /**
+     * @return -1 for accounts that are not serialized, sorts before every lane and is never locked
+     */
+    private int laneOf(Long accountId) {
+        if (accountId == null || shardedBalanceService.isSharded(accountId)) {
+            return -1;
+        }
+        // Fibonacci hashing, sequential ids spread over all lanes
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash >>> 32, (long) lanes.length);
+    }
+
+    private void release(int lane) {
+        if (lane >= 0) {
+            lanes[lane].unlock();
+        }
+    }
+
+    private void acquire(int lane, long deadline) {
+        if (lane < 0) {
+            return;
+        }
+        try {
+            if (!lanes[lane].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new OverloadedException("Too many transfers waiting for the same account", retryAfter);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Transfer interrupted", TransactionException.TransactionErrorCode.CONCURRENT_UPDATE);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.domain.PaymentRequest;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.dto.PaymentStatusDTO;
+import com.rindago.payment.exceptions.OverloadedException;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.PaymentRequestRepository;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Accept-then-settle. A request is stored as {@link PaymentRequest} and queued to the lane of its sender account,
+ * each lane settles its queue in micro-batches through {@link BatchPaymentService}.
+ * Lane queues are bounded, a full lane refuses new requests instead of piling up work while the database stalls.
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@ConditionalOnProperty(name = "payment.async.enabled", havingValue = "true")
+@Slf4j
+public class AsyncPaymentService {
+    private static final long POLL_MILLIS = 200;
+
+    private final PaymentRequestRepository paymentRequestRepository;
+    private final BatchPaymentService batchPaymentService;
+    private final PaymentProperties.Async properties;
+    private final Lane[] lanes;
+
+    private volatile boolean running;
+
+    public AsyncPaymentService(PaymentRequestRepository paymentRequestRepository,
+                               BatchPaymentService batchPaymentService,
+                               PaymentProperties paymentProperties,
+                               MeterRegistry meterRegistry) {
+        this.paymentRequestRepository = paymentRequestRepository;
+        this.batchPaymentService = batchPaymentService;
+        this.properties = paymentProperties.getAsync();
+        this.lanes = new Lane[properties.getLanes()];
+        int laneCapacity = Math.max(1, properties.getQueueCapacity() / lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, laneCapacity);
+        }
+        Gauge.builder("payment.async.queue", this, service -> Arrays.stream(service.lanes).mapToInt(lane -> lane.queue.size()).sum())
+                .description("Accepted payment requests waiting for settlement")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Requests accepted before a restart are queued again before any new request is accepted
+     */
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (Lane lane : lanes) {
+            lane.thread.start();
+        }
+        List<PaymentRequest> pending = paymentRequestRepository.findByStatusOrderById(PaymentRequest.Status.ACCEPTED);
+        for (PaymentRequest request : pending) {
+            Lane lane = laneOf(request.getSenderAccountId());
+            lane.permits.acquireUninterruptibly();
+            lane.queue.add(request.getId());
+        }
+        if (!pending.isEmpty()) {
+            log.info("Queued {} payment requests accepted before restart", pending.size());
+        }
+    }
+
+    /**
+     * Lanes finish the batch at hand, whatever is still queued stays accepted for the next start
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * @throws OverloadedException when the lane of the sender account is full
+     */
+    public PaymentStatusDTO accept(PaymentRequestDTO requestDTO, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isEmpty() || idempotencyKey.length() > Payment.IDEMPOTENCY_KEY_LENGTH) {
+                throw new TransactionException("Idempotency key must be 1 to " + Payment.IDEMPOTENCY_KEY_LENGTH + " characters", TransactionException.TransactionErrorCode.INVALID_IDEMPOTENCY_KEY);
+            }
+            Optional<PaymentRequest> replay = paymentRequestRepository.findByIdempotencyKey(idempotencyKey);
+            if (replay.isPresent()) {
+                return replay(replay.get(), requestDTO);
+            }
+        }
+
+        Lane lane = laneOf(requestDTO.getSenderAccountId());
+        if (!lane.permits.tryAcquire()) {
+            throw new OverloadedException("Too many payments waiting for settlement", properties.getRetryBackoff());
+        }
+
+        PaymentRequest request;
+        try {
+            request = paymentRequestRepository.save(PaymentRequest.builder()
+                    .senderAccountId(requestDTO.getSenderAccountId())
+                    .receiverAccountId(requestDTO.getReceiverAccountId())
+                    .amount(requestDTO.getAmount())
+                    .idempotencyKey(idempotencyKey)
+                    .status(PaymentRequest.Status.ACCEPTED)
+                    .acceptedAt(Instant.now())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            lane.permits.release();
+            // Concurrent request with the same key was stored first
+            return paymentRequestRepository.findByIdempotencyKey(idempotencyKey).map(replay -> replay(replay, requestDTO)).orElseThrow(() -> e);
+        } catch (RuntimeException e) {
+            lane.permits.release();
+            throw e;
+        }
+
+        // Permit guarantees free space
+        lane.queue.add(request.getId());
+        return PaymentStatusDTO.of(request);
+    }
+
+    /**
+     * @throws TransactionException INVALID_IDEMPOTENCY_KEY when the key was used for a different request
+     */
+    private static PaymentStatusDTO replay(PaymentRequest request, PaymentRequestDTO requestDTO) {
+        if (!request.getAmount().equals(requestDTO.getAmount())
+                || !request.getSenderAccountId().equals(requestDTO.getSenderAccountId())
+                || !request.getReceiverAccountId().equals(requestDTO.getReceiverAccountId())) {
+            throw IdempotentTransfer.keyReused();
+        }
+        return PaymentStatusDTO.of(request);
+    }
+
+    public Optional<PaymentStatusDTO> status(Long requestId) {
+        return paymentRequestRepository.findById(requestId).map(PaymentStatusDTO::of);
+    }
+
+    private Lane laneOf(Long senderAccountId) {
+        return lanes[Math.floorMod(Long.hashCode(senderAccountId), lanes.length)];
+    }
+
+    /**
+     * Payments and request outcomes commit together, a request is never settled twice
+     */
+    private void settle(List<Long> requestIds) {
+        List<PaymentRequest> requests = paymentRequestRepository.findAllById(requestIds).stream()
+                .filter(request -> request.getStatus() == PaymentRequest.Status.ACCEPTED)
+                .sorted(Comparator.comparing(PaymentRequest::getId))
+                .collect(Collectors.toList());
+        if (requests.isEmpty()) {
+            return;
+        }
+        List<PaymentRequestDTO> payments = requests.stream()
+                .map(request -> new PaymentRequestDTO(request.getSenderAccountId(), request.getReceiverAccountId(), request.getAmount()))
+                .collect(Collectors.toList());
+
+        batchPaymentService.performBatch(payments, BatchPaymentRequestDTO.Mode.PARTIAL, unitResults -> {
+            List<Long> unitIds = unitResults.stream()
+                    .map(result -> requests.get(result.getIndex()).getId())
+                    .collect(Collectors.toList());
+            Map<Long, PaymentRequest> managed = paymentRequestRepository.findAllById(unitIds).stream()
+                    .collect(Collectors.toMap(PaymentRequest::getId, Function.identity()));
+            for (BatchPaymentService.ItemResult result : unitResults) {
+                PaymentRequest request = managed.get(requests.get(result.getIndex()).getId());
+                request.setStatus(result.getErrorCode() == null ? PaymentRequest.Status.SETTLED : PaymentRequest.Status.REJECTED);
+                request.setPaymentId(result.getTransactionId());
+                request.setErrorCode(result.getErrorCode());
+                request.setSettledAt(result.getTimestamp() != null ? result.getTimestamp() : Instant.now());
+            }
+        });
+    }
+
+    private final class Lane implements Runnable {
+        private final BlockingQueue<Long> queue;
+        private final Semaphore permits;
+        private final Thread thread;
+
+        private Lane(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.permits = new Semaphore(capacity);
+            this.thread = new Thread(this, "payment-lane-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Long> batch = new ArrayList<>(properties.getBatchSize());
+            while (running) {
+                try {
+                    Long first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, properties.getBatchSize() - 1);
+                    settleWithRetry(batch);
+                    permits.release(batch.size());
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void settleWithRetry(List<Long> batch) throws InterruptedException {
+            while (true) {
+                try {
+                    settle(batch);
+                    return;
+                } catch (RuntimeException e) {
+                    // Units committed before the failure are no longer accepted and are skipped on the next attempt
+                    log.error("Settling {} payment requests failed, retrying in {}", batch.size(), properties.getRetryBackoff(), e);
+                    if (!running) {
+                        return;
+                    }
+                    Thread.sleep(properties.getRetryBackoff().toMillis());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.rindago.payment.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.exceptions.TransactionException.TransactionErrorCode;
+import com.rindago.payment.repository.AccountRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import org.hibernate.Session;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Bulk transfers. Every account of a transaction unit is locked up front with one statement in id order,
+ * balances are checked and changed in memory, payments are inserted in JDBC batches.
+ * Credits to hot accounts go to the locked row, not to a slot. A hot sender whose row is short has its slots drained
+ * into the row once per unit, so the whole balance is available under the row lock.
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@RequiredArgsConstructor
+public class BatchPaymentService {
+    private static final int LOCK_QUERY_SIZE = 1000;
+
+    private final AccountRepository accountRepository;
+    private final PaymentProperties paymentProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferMetrics transferMetrics;
+    private final LedgerService ledgerService;
+    private final AccountCache accountCache;
+    private final ShardedBalanceService shardedBalanceService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public List<ItemResult> performBatch(List<PaymentRequestDTO> payments, BatchPaymentRequestDTO.Mode mode) {
+        return performBatch(payments, mode, unitResults -> {
+        });
+    }
+
+    /**
+     * @param listener called inside every committing unit transaction with the results of that unit,
+     *                 whatever it writes commits together with the payments
+     */
+    public List<ItemResult> performBatch(List<PaymentRequestDTO> payments, BatchPaymentRequestDTO.Mode mode, UnitListener listener) {
+        ItemResult[] results = new ItemResult[payments.size()];
+
+        if (mode == BatchPaymentRequestDTO.Mode.ALL_OR_NOTHING) {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!applyUnit(payments, 0, payments.size(), results)) {
+                    status.setRollbackOnly();
+                    markRolledBack(results);
+                    return;
+                }
+                listener.unitApplied(Arrays.asList(results));
+            });
+            accountCache.balancesChanged(accountIds(payments));
+            return Arrays.asList(results);
+        }
+
+        int chunkSize = paymentProperties.getBatch().getChunkSize();
+        for (int start = 0; start < payments.size(); start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, payments.size());
+            transactionTemplate.executeWithoutResult(status -> {
+                applyUnit(payments, from, to, results);
+                listener.unitApplied(Arrays.asList(results).subList(from, to));
+            });
+            accountCache.balancesChanged(accountIds(payments.subList(from, to)));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return false when at least one payment was rejected
+     */
+    private boolean applyUnit(List<PaymentRequestDTO> payments, int from, int to, ItemResult[] results) {
+        int chunkSize = paymentProperties.getBatch().getChunkSize();
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+
+        Map<Long, Account> accounts = lockAccounts(payments.subList(from, to));
+        List<Object> unflushed = new ArrayList<>(chunkSize * 3);
+        Set<Long> drained = new HashSet<>();
+        boolean allApplied = true;
+
+        for (int i = from; i < to; i++) {
+            PaymentRequestDTO request = payments.get(i);
+            Account sender = accounts.get(request.getSenderAccountId());
+            Account receiver = accounts.get(request.getReceiverAccountId());
+
+            if (sender != null && request.getAmount().isGreaterThan(sender.getBalance())
+                    && shardedBalanceService.isSharded(sender.getId()) && drained.add(sender.getId())) {
+                sender.setBalance(sender.getBalance().plus(shardedBalanceService.drainSlots(sender.getId())));
+            }
+
+            TransactionErrorCode rejection = check(request.getAmount(), sender, receiver);
+            if (rejection != null) {
+                results[i] = new ItemResult(i, null, null, rejection.name());
+                allApplied = false;
+                continue;
+            }
+
+            sender.setBalance(sender.getBalance().minus(request.getAmount()));
+            receiver.setBalance(receiver.getBalance().plus(request.getAmount()));
+
+            Payment payment = Payment.builder()
+                    .senderAccount(sender)
+                    .receiverAccount(receiver)
+                    .amount(request.getAmount())
+                    .timestamp(Instant.now())
+                    .build();
+            entityManager.persist(payment);
+            unflushed.addAll(ledgerService.record(payment));
+            results[i] = new ItemResult(i, payment.getId(), payment.getTimestamp(), null);
+
+            // Keep persistence context small, accounts stay managed and are flushed again on commit
+            unflushed.add(payment);
+            if (unflushed.size() >= chunkSize * 3) {
+                entityManager.flush();
+                unflushed.forEach(entityManager::detach);
+                unflushed.clear();
+            }
+        }
+        return allApplied;
+    }
+
+    private TransactionErrorCode check(Money amount, Account sender, Account receiver) {
+        if (amount.signum() < 0) {
+            return TransactionErrorCode.ZERO_AMOUNT;
+        }
+        if (sender == null || receiver == null) {
+            return TransactionErrorCode.NOT_FOUND_OWNER;
+        }
+        if (amount.isGreaterThan(sender.getBalance())) {
+            return TransactionErrorCode.NOT_ENOUGH_AMOUNT;
+        }
+        return null;
+    }
+
+    private Map<Long, Account> lockAccounts(List<PaymentRequestDTO> payments) {
+        // Sorted ids, so two batches touching the same accounts lock them in the same order
+        List<Long> ids = new ArrayList<>(accountIds(payments));
+
+        Map<Long, Account> accounts = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i += LOCK_QUERY_SIZE) {
+            List<Long> lockIds = ids.subList(i, Math.min(i + LOCK_QUERY_SIZE, ids.size()));
+            transferMetrics.recordLockWait(() -> accountRepository.findAllByIdForUpdate(lockIds))
+                    .forEach(account -> accounts.put(account.getId(), account));
+        }
+        return accounts;
+    }
+
+    private static SortedSet<Long> accountIds(List<PaymentRequestDTO> payments) {
+        SortedSet<Long> ids = new TreeSet<>();
+        for (PaymentRequestDTO payment : payments) {
+            ids.add(payment.getSenderAccountId());
+            ids.add(payment.getReceiverAccountId());
+        }
+        return ids;
+    }
+
+    private void markRolledBack(ItemResult[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].getErrorCode() == null) {
+                results[i] = new ItemResult(i, null, null, TransactionErrorCode.BATCH_ROLLED_BACK.name());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface UnitListener {
+        void unitApplied(List<ItemResult> unitResults);
+    }
+
+    @AllArgsConstructor
+    @Getter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ItemResult {
+        private final int index;
+        private final Long transactionId;
+        private final Instant timestamp;
+        private final String errorCode;
+    }
+}
@@ -0,0 +1,252 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.exceptions.OutcomeUnknownException;
+import com.rindago.payment.exceptions.OverloadedException;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.exceptions.TransactionException.TransactionErrorCode;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group commit. Request threads queue their transfer and wait, a committer takes whatever arrives within
+ * payment.group-commit.window (up to max-size transfers) and applies the group through {@link BatchPaymentService}:
+ * accounts locked once in id order, every transfer checked in memory against the locked rows, one commit and log flush
+ * for the group. A rejected transfer does not affect the others, each caller gets its own result or rejection.
+ * A group failing as a whole, e.g. on a lock timeout, fails every caller in it. A caller giving up on a transfer no
+ * committer has taken yet withdraws it, one already taken may still commit and its outcome is unknown to the caller
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@Slf4j
+public class GroupCommitService {
+    private static final long POLL_MILLIS = 200;
+
+    private final BatchPaymentService batchPaymentService;
+    private final ShardedBalanceService shardedBalanceService;
+    private final PaymentProperties.GroupCommit properties;
+    private final BlockingQueue<Pending> queue;
+    private final Thread[] committers;
+    private final DistributionSummary groupSize;
+
+    private volatile boolean running;
+
+    public GroupCommitService(BatchPaymentService batchPaymentService,
+                              ShardedBalanceService shardedBalanceService,
+                              PaymentProperties paymentProperties,
+                              MeterRegistry meterRegistry) {
+        this.batchPaymentService = batchPaymentService;
+        this.shardedBalanceService = shardedBalanceService;
+        this.properties = paymentProperties.getGroupCommit();
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.committers = new Thread[properties.isEnabled() ? properties.getCommitters() : 0];
+        for (int i = 0; i < committers.length; i++) {
+            committers[i] = new Thread(new Committer(), "payment-group-commit-" + i);
+            committers[i].setDaemon(true);
+        }
+        this.groupSize = DistributionSummary.builder("payment.group-commit.size")
+                .description("Transfers committed together in one transaction")
+                .register(meterRegistry);
+        Gauge.builder("payment.group-commit.queue", queue, BlockingQueue::size)
+                .description("Transfers waiting for a group")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (Thread committer : committers) {
+            committer.start();
+        }
+    }
+
+    /**
+     * Committers finish the group at hand, transfers still queued fail without being applied
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread committer : committers) {
+            committer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("Shutting down, transfer not applied")));
+    }
+
+    /**
+     * Idempotent transfers keep their own transaction, the unique key would roll back the whole group on a duplicate.
+     * Hot accounts with balance slots are credited through their slots, not through a locked row
+     */
+    public boolean accepts(Long fromAccountId, Long toAccountId, String idempotencyKey) {
+        return properties.isEnabled() && idempotencyKey == null
+                && !shardedBalanceService.isSharded(fromAccountId) && !shardedBalanceService.isSharded(toAccountId);
+    }
+
+    /**
+     * Blocks until the group of this transfer has committed
+     *
+     * @throws OverloadedException     when the queue is full or the transfer was withdrawn after payment.group-commit.timeout
+     * @throws OutcomeUnknownException when the group of the transfer did not commit within payment.group-commit.timeout
+     */
+    public PaymentService.Transaction transfer(Money amount, Long fromAccountId, Long toAccountId) {
+        Pending pending = new Pending(new PaymentRequestDTO(fromAccountId, toAccountId, amount));
+        if (!queue.offer(pending)) {
+            throw new OverloadedException("Too many transfers waiting for a group commit", properties.getWindow().multipliedBy(10));
+        }
+        try {
+            return pending.result.get(properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Transfer failed", e.getCause());
+        } catch (TimeoutException e) {
+            if (pending.abandon()) {
+                throw new OverloadedException("Transfer not applied, no group commit within " + properties.getTimeout(), properties.getTimeout());
+            }
+            throw new OutcomeUnknownException("Transfer not confirmed within " + properties.getTimeout()
+                    + " and may still be applied, check the payment history before sending it again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Transfer interrupted", TransactionErrorCode.CONCURRENT_UPDATE);
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        List<PaymentRequestDTO> requests = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            requests.add(pending.request);
+        }
+
+        List<BatchPaymentService.ItemResult> results;
+        try {
+            results = batchPaymentService.performBatch(requests, BatchPaymentRequestDTO.Mode.PARTIAL);
+        } catch (RuntimeException e) {
+            log.warn("Group of {} transfers failed", group.size(), e);
+            group.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        groupSize.record(group.size());
+
+        for (int i = 0; i < group.size(); i++) {
+            BatchPaymentService.ItemResult result = results.get(i);
+            if (result.getErrorCode() == null) {
+                group.get(i).result.complete(new PaymentService.Transaction(result.getTransactionId(), result.getTimestamp()));
+            } else {
+                group.get(i).result.completeExceptionally(rejection(TransactionErrorCode.valueOf(result.getErrorCode())));
+            }
+        }
+    }
+
+    /**
+     * Same messages as a transfer in its own transaction, except that the batch check does not tell which account is missing
+     */
+    private static TransactionException rejection(TransactionErrorCode code) {
+        switch (code) {
+            case NOT_ENOUGH_AMOUNT:
+                return new TransactionException("Sender balance is not enough", code);
+            case NOT_FOUND_OWNER:
+                return new TransactionException("Sender or receiver account not found", code);
+            case ZERO_AMOUNT:
+                return new TransactionException("Cant be less then 0", code);
+            default:
+                return new TransactionException("Transfer rejected", code);
+        }
+    }
+
+    private static final class Pending {
+        private static final int QUEUED = 0;
+        private static final int TAKEN = 1;
+        private static final int ABANDONED = 2;
+
+        private final PaymentRequestDTO request;
+        private final CompletableFuture<PaymentService.Transaction> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private Pending(PaymentRequestDTO request) {
+            this.request = request;
+        }
+
+        /**
+         * @return false when the caller gave up already, the transfer must not be applied
+         */
+        private boolean take() {
+            return state.compareAndSet(QUEUED, TAKEN);
+        }
+
+        /**
+         * @return false when a committer took the transfer already
+         */
+        private boolean abandon() {
+            return state.compareAndSet(QUEUED, ABANDONED);
+        }
+    }
+
+    private final class Committer implements Runnable {
+        private final List<Pending> group = new ArrayList<>(properties.getMaxSize());
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    group.add(first);
+                    collect();
+                    group.removeIf(pending -> !pending.take());
+                    if (!group.isEmpty()) {
+                        commit(group);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    group.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("Shutting down, transfer not applied")));
+                    return;
+                } finally {
+                    group.clear();
+                }
+            }
+        }
+
+        /**
+         * Whatever is queued joins at once, then the group stays open until the window of its first transfer ends
+         */
+        private void collect() throws InterruptedException {
+            long deadline = System.nanoTime() + properties.getWindow().toNanos();
+            while (group.size() < properties.getMaxSize()) {
+                queue.drainTo(group, properties.getMaxSize() - group.size());
+                long remaining = deadline - System.nanoTime();
+                if (group.size() >= properties.getMaxSize() || remaining <= 0) {
+                    return;
+                }
+                Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                group.add(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.PaymentRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Result of a transfer made with an idempotency key together with the request it was made for. A key belongs to one
+ * request, repeating it with another amount or other accounts is rejected instead of replaying a result that is not its own
+ */
+@AllArgsConstructor
+@Getter
+public class IdempotentTransfer {
+    private final PaymentService.Transaction transaction;
+    private final Money amount;
+    private final Long fromAccountId;
+    private final Long toAccountId;
+
+    public static IdempotentTransfer of(PaymentRepository.TransactionView payment) {
+        return new IdempotentTransfer(new PaymentService.Transaction(payment.getId(), payment.getTimestamp()),
+                payment.getAmount(), payment.getSenderAccountId(), payment.getReceiverAccountId());
+    }
+
+    /**
+     * @throws TransactionException INVALID_IDEMPOTENCY_KEY when the key was used for a different request
+     */
+    public PaymentService.Transaction replay(Money amount, Long fromAccountId, Long toAccountId) {
+        if (!this.amount.equals(amount) || !this.fromAccountId.equals(fromAccountId) || !this.toAccountId.equals(toAccountId)) {
+            throw keyReused();
+        }
+        return transaction;
+    }
+
+    public static TransactionException keyReused() {
+        return new TransactionException("Idempotency key was already used for a different payment", TransactionException.TransactionErrorCode.INVALID_IDEMPOTENCY_KEY);
+    }
+}
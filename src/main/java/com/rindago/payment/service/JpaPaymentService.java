@@ -0,0 +1,323 @@
+package com.rindago.payment.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.repository.PaymentRepository;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.OptimisticLockException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Transfers applied to account rows through JPA, see {@link PaymentProperties.TransferMode}
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@Slf4j
+public class JpaPaymentService implements PaymentService {
+
+    private final PaymentRepository paymentRepository;
+    private final AccountRepository accountRepository;
+    private final PaymentProperties paymentProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardedBalanceService shardedBalanceService;
+    private final TransferMetrics transferMetrics;
+    private final LedgerService ledgerService;
+    private final AccountCache accountCache;
+    private final AccountLanes accountLanes;
+    private final GroupCommitService groupCommitService;
+
+    private final Cache<String, IdempotentTransfer> idempotencyCache;
+
+    public JpaPaymentService(PaymentRepository paymentRepository,
+                          AccountRepository accountRepository,
+                          PaymentProperties paymentProperties,
+                          TransactionTemplate transactionTemplate,
+                          ShardedBalanceService shardedBalanceService,
+                          TransferMetrics transferMetrics,
+                          LedgerService ledgerService,
+                          AccountCache accountCache,
+                          AccountLanes accountLanes,
+                          GroupCommitService groupCommitService) {
+        this.paymentRepository = paymentRepository;
+        this.accountRepository = accountRepository;
+        this.paymentProperties = paymentProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.shardedBalanceService = shardedBalanceService;
+        this.transferMetrics = transferMetrics;
+        this.ledgerService = ledgerService;
+        this.accountCache = accountCache;
+        this.accountLanes = accountLanes;
+        this.groupCommitService = groupCommitService;
+        this.idempotencyCache = Caffeine.newBuilder()
+                .maximumSize(paymentProperties.getIdempotency().getCacheSize())
+                .expireAfterWrite(paymentProperties.getIdempotency().getCacheTtl())
+                .build();
+    }
+
+    @Override
+    public Transaction performTransaction(Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+
+        if (amount.signum() < 0) {
+            throw new TransactionException("Cant be less then 0", TransactionException.TransactionErrorCode.ZERO_AMOUNT);
+        }
+
+        if (idempotencyKey == null) {
+            return execute(amount, fromAccountId, toAccountId, null);
+        }
+
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > Payment.IDEMPOTENCY_KEY_LENGTH) {
+            throw new TransactionException("Idempotency key must be 1 to " + Payment.IDEMPOTENCY_KEY_LENGTH + " characters", TransactionException.TransactionErrorCode.INVALID_IDEMPOTENCY_KEY);
+        }
+
+        IdempotentTransfer replay = idempotencyCache.getIfPresent(idempotencyKey);
+        if (replay != null) {
+            return replay.replay(amount, fromAccountId, toAccountId);
+        }
+
+        // Not seen by this node, but may be committed by another one or before restart
+        IdempotentTransfer transfer = findByIdempotencyKey(idempotencyKey).orElse(null);
+        if (transfer == null) {
+            try {
+                transfer = new IdempotentTransfer(execute(amount, fromAccountId, toAccountId, idempotencyKey), amount, fromAccountId, toAccountId);
+            } catch (DataIntegrityViolationException e) {
+                // Concurrent request with the same key won the unique constraint, our transfer is rolled back
+                transfer = findByIdempotencyKey(idempotencyKey).orElseThrow(() -> e);
+            }
+        }
+
+        idempotencyCache.put(idempotencyKey, transfer);
+        return transfer.replay(amount, fromAccountId, toAccountId);
+    }
+
+    private Optional<IdempotentTransfer> findByIdempotencyKey(String idempotencyKey) {
+        return paymentRepository.findTransactionByIdempotencyKey(idempotencyKey).map(IdempotentTransfer::of);
+    }
+
+    private Transaction execute(Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+        Timer.Sample sample = transferMetrics.start();
+        TransferMetrics.Path path = groupCommitService.accepts(fromAccountId, toAccountId, idempotencyKey)
+                ? TransferMetrics.Path.GROUP_COMMIT
+                : path(fromAccountId, toAccountId);
+        String outcome = TransferMetrics.OUTCOME_OK;
+        try {
+            accountCache.precheck(amount, fromAccountId, toAccountId);
+            if (path == TransferMetrics.Path.GROUP_COMMIT) {
+                // No lanes, they would only keep transfers of the same account out of one group
+                return refreshingCache(fromAccountId, toAccountId,
+                        () -> groupCommitService.transfer(amount, fromAccountId, toAccountId));
+            }
+            return accountLanes.callInLanes(fromAccountId, toAccountId,
+                    () -> refreshingCache(fromAccountId, toAccountId,
+                            () -> dispatch(path, amount, fromAccountId, toAccountId, idempotencyKey)));
+        } catch (TransactionException e) {
+            outcome = e.getErrorCode();
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = TransferMetrics.OUTCOME_ERROR;
+            throw e;
+        } finally {
+            transferMetrics.stopTransfer(sample, path, outcome);
+        }
+    }
+
+    private Transaction refreshingCache(Long fromAccountId, Long toAccountId, Supplier<Transaction> transfer) {
+        Transaction transaction;
+        try {
+            transaction = transfer.get();
+        } catch (TransactionException e) {
+            if (TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT.name().equals(e.getErrorCode())) {
+                accountCache.balanceTooLow(fromAccountId);
+            }
+            throw e;
+        }
+        // Committed by now
+        accountCache.balanceChanged(fromAccountId);
+        accountCache.balanceChanged(toAccountId);
+        return transaction;
+    }
+
+    private TransferMetrics.Path path(Long fromAccountId, Long toAccountId) {
+        // Hot accounts never load or lock the account row on credit, that only works with statement updates
+        if (shardedBalanceService.isSharded(fromAccountId) || shardedBalanceService.isSharded(toAccountId)) {
+            return TransferMetrics.Path.HOT_ACCOUNT;
+        }
+        switch (paymentProperties.getTransferMode()) {
+            case ATOMIC_UPDATE:
+                return TransferMetrics.Path.ATOMIC_UPDATE;
+            case PESSIMISTIC:
+                return TransferMetrics.Path.PESSIMISTIC;
+            default:
+                return TransferMetrics.Path.OPTIMISTIC;
+        }
+    }
+
+    private Transaction dispatch(TransferMetrics.Path path, Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+        switch (path) {
+            case HOT_ACCOUNT:
+            case ATOMIC_UPDATE:
+                return transactionTemplate.execute(status -> atomicTransfer(amount, fromAccountId, toAccountId, idempotencyKey));
+            case PESSIMISTIC:
+                return transactionTemplate.execute(status -> transfer(amount, fromAccountId, toAccountId, idempotencyKey));
+            default:
+                break;
+        }
+
+        // Each attempt runs in its own transaction, so a retry sees the versions committed by the winner
+        PaymentProperties.Retry retry = paymentProperties.getRetry();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> transfer(amount, fromAccountId, toAccountId, idempotencyKey));
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                if (attempt >= retry.getMaxAttempts()) {
+                    transferMetrics.retriesExhausted();
+                    log.warn("Transfer {} -> {} gave up after {} attempts", fromAccountId, toAccountId, attempt);
+                    throw new TransactionException("Account is concurrently modified, try again later", TransactionException.TransactionErrorCode.CONCURRENT_UPDATE);
+                }
+                transferMetrics.retried();
+                backoff(retry, attempt);
+            }
+        }
+    }
+
+    private Transaction transfer(Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+        Timer.Sample phase = transferMetrics.start();
+        // Lower id is always read (and locked) first, so opposite transfers between the same pair cannot deadlock
+        Optional<Account> sender;
+        Optional<Account> receiver;
+        if (fromAccountId <= toAccountId) {
+            sender = findAccount(fromAccountId);
+            receiver = findAccount(toAccountId);
+        } else {
+            receiver = findAccount(toAccountId);
+            sender = findAccount(fromAccountId);
+        }
+        transferMetrics.stopPhase(phase, TransferMetrics.Phase.LOOKUP);
+
+        phase = transferMetrics.start();
+        Account senderAccount = sender
+                .orElseThrow(() -> new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER));
+        // Sharded accounts never reach this path, so the row holds the whole balance
+        val senderAccountBalance = senderAccount.getBalance();
+
+        if (amount.isGreaterThan(senderAccountBalance)) {
+            throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+        }
+
+        Account receiverAccount = receiver
+                .orElseThrow(() -> new TransactionException("Receiver account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER));
+        transferMetrics.stopPhase(phase, TransferMetrics.Phase.CHECK);
+
+        senderAccount.setBalance(senderAccountBalance.minus(amount));
+        receiverAccount.setBalance(receiverAccount.getBalance().plus(amount));
+
+        final Payment paymentTransaction = Payment.builder()
+                .senderAccount(senderAccount)
+                .receiverAccount(receiverAccount)
+                .amount(amount)
+                .timestamp(Instant.now())
+                .idempotencyKey(idempotencyKey)
+                .build();
+
+        phase = transferMetrics.start();
+        paymentRepository.saveAndFlush(paymentTransaction);
+        ledgerService.record(paymentTransaction);
+        accountRepository.saveAll(List.of(senderAccount, receiverAccount));
+        accountRepository.flush();
+        transferMetrics.stopPhase(phase, TransferMetrics.Phase.FLUSH);
+
+        return new Transaction(paymentTransaction.getId(), paymentTransaction.getTimestamp());
+    }
+
+    /**
+     * Fast path: no account is loaded, the row count of conditional updates decides the outcome
+     */
+    private Transaction atomicTransfer(Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+        Timer.Sample phase = transferMetrics.start();
+        // Same lower id first order as the locking path, UPDATE takes the row lock too
+        if (fromAccountId <= toAccountId) {
+            withdraw(amount, fromAccountId);
+            deposit(amount, toAccountId);
+        } else {
+            deposit(amount, toAccountId);
+            withdraw(amount, fromAccountId);
+        }
+        transferMetrics.stopPhase(phase, TransferMetrics.Phase.UPDATE);
+
+        // References only, the accounts are never loaded on this path
+        final Payment paymentTransaction = Payment.builder()
+                .senderAccount(accountRepository.getOne(fromAccountId))
+                .receiverAccount(accountRepository.getOne(toAccountId))
+                .amount(amount)
+                .timestamp(Instant.now())
+                .idempotencyKey(idempotencyKey)
+                .build();
+
+        // Inserted on commit, no separate flush round-trip
+        paymentRepository.save(paymentTransaction);
+        ledgerService.record(paymentTransaction);
+
+        return new Transaction(paymentTransaction.getId(), paymentTransaction.getTimestamp());
+    }
+
+    private void withdraw(Money amount, Long fromAccountId) {
+        if (shardedBalanceService.isSharded(fromAccountId)) {
+            shardedBalanceService.debit(fromAccountId, amount);
+            return;
+        }
+        if (accountRepository.withdraw(fromAccountId, amount) > 0) {
+            return;
+        }
+        if (!accountRepository.existsById(fromAccountId)) {
+            throw new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+        }
+        throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+    }
+
+    private void deposit(Money amount, Long toAccountId) {
+        int updated = shardedBalanceService.isSharded(toAccountId)
+                ? shardedBalanceService.credit(toAccountId, amount)
+                : accountRepository.deposit(toAccountId, amount);
+        if (updated == 0) {
+            throw new TransactionException("Receiver account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+        }
+    }
+
+    private Optional<Account> findAccount(Long accountId) {
+        if (paymentProperties.getTransferMode() == PaymentProperties.TransferMode.PESSIMISTIC) {
+            return transferMetrics.recordLockWait(() -> accountRepository.findByIdForUpdate(accountId));
+        }
+        return accountRepository.findById(accountId);
+    }
+
+    /**
+     * Exponential backoff with full jitter, so that colliding transfers do not retry in lockstep
+     */
+    private void backoff(PaymentProperties.Retry retry, int attempt) {
+        long ceiling = Math.min(retry.getMaxBackoff().toMillis(), retry.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Transfer interrupted", TransactionException.TransactionErrorCode.CONCURRENT_UPDATE);
+        }
+    }
+}
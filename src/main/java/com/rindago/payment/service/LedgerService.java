@@ -0,0 +1,151 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.LedgerEntry;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.repository.LedgerEntryRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Double-entry ledger behind account balances. Account.balance is a projection kept up to date by
+ * the transfer transaction, the ledger is the source to verify or rebuild it from.
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@Slf4j
+public class LedgerService {
+    private static final int MAX_REPORTED_DRIFTS = 1000;
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final AccountRepository accountRepository;
+    private final AccountCache accountCache;
+    private final ShardedBalanceService shardedBalanceService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public LedgerService(LedgerEntryRepository ledgerEntryRepository,
+                         AccountRepository accountRepository,
+                         AccountCache accountCache,
+                         ShardedBalanceService shardedBalanceService,
+                         PlatformTransactionManager transactionManager) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.accountRepository = accountRepository;
+        this.accountCache = accountCache;
+        this.shardedBalanceService = shardedBalanceService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Appends debit and credit entries of a payment, inserted together with it
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public List<LedgerEntry> record(Payment payment) {
+        return ledgerEntryRepository.saveAll(List.of(
+                new LedgerEntry(null, payment.getId(), payment.getSenderAccount().getId(), payment.getAmount().negate().toBigDecimal(), payment.getTimestamp()),
+                new LedgerEntry(null, payment.getId(), payment.getReceiverAccount().getId(), payment.getAmount().toBigDecimal(), payment.getTimestamp())
+        ));
+    }
+
+    /**
+     * Streams accounts and per-account ledger totals side by side in id order, memory use does not grow with table size.
+     * Under live traffic a transfer committing between the two reads shows up as drift, repeat before acting on it
+     */
+    public Verification verify() {
+        return readOnlyTransactionTemplate.execute(status -> {
+            Verification verification = new Verification(0, 0, new ArrayList<>());
+            try (Stream<Account> accounts = accountRepository.streamAllByOrderById();
+                 Stream<LedgerEntryRepository.AccountTotal> totals = ledgerEntryRepository.streamTotalsByAccount()) {
+                Iterator<LedgerEntryRepository.AccountTotal> totalIterator = totals.iterator();
+                LedgerEntryRepository.AccountTotal total = totalIterator.hasNext() ? totalIterator.next() : null;
+
+                for (Iterator<Account> accountIterator = accounts.iterator(); accountIterator.hasNext(); ) {
+                    Account account = accountIterator.next();
+                    entityManager.detach(account);
+
+                    while (total != null && total.getAccountId() < account.getId()) {
+                        total = totalIterator.hasNext() ? totalIterator.next() : null;
+                    }
+                    Money ledgerTotal = total != null && total.getAccountId().equals(account.getId()) ? Money.of(total.getTotal()) : Money.ZERO;
+
+                    verification.check(account.getId(), shardedBalanceService.balance(account), account.getOpeningBalance().plus(ledgerTotal));
+                }
+            }
+            return verification;
+        });
+    }
+
+    /**
+     * Verifies and overwrites every drifted balance with the ledger value, one locked account at a time
+     */
+    public Verification rebuild() {
+        Verification verification = verify();
+        for (Drift drift : verification.getDrifts()) {
+            transactionTemplate.executeWithoutResult(status -> rebuild(drift.getAccountId()));
+            accountCache.balanceChanged(drift.getAccountId());
+        }
+        if (verification.getDriftCount() > verification.getDrifts().size()) {
+            log.warn("Only {} of {} drifted accounts rebuilt, run again", verification.getDrifts().size(), verification.getDriftCount());
+        }
+        return verification;
+    }
+
+    private void rebuild(Long accountId) {
+        accountRepository.findByIdForUpdate(accountId).ifPresent(account -> {
+            Money derived = account.getOpeningBalance().plus(Money.of(ledgerEntryRepository.sumByAccountId(accountId)));
+            // Unconsolidated hot account slots are part of the derived balance, the row gets the rest
+            Money balance = shardedBalanceService.balance(account);
+            Money slots = balance.minus(account.getBalance());
+            log.warn("Rebuilding balance of account {}: {} -> {}", accountId, balance, derived);
+            account.setBalance(derived.minus(slots));
+        });
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Verification {
+        private long accountsChecked;
+        private long driftCount;
+        private final List<Drift> drifts;
+
+        private void check(Long accountId, Money balance, Money derivedBalance) {
+            accountsChecked++;
+            if (derivedBalance.equals(balance)) {
+                return;
+            }
+            driftCount++;
+            if (drifts.size() < MAX_REPORTED_DRIFTS) {
+                drifts.add(new Drift(accountId, balance, derivedBalance));
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Drift {
+        private final Long accountId;
+        private final Money balance;
+        private final Money ledgerBalance;
+    }
+}
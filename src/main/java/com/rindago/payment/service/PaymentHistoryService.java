@@ -0,0 +1,188 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.PaymentHistoryItemDTO;
+import com.rindago.payment.dto.PaymentHistoryPageDTO;
+import com.rindago.payment.exceptions.TransactionException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Payments sent or received by an account, newest first by (timestamp, id).
+ * Pages are keyset based: the cursor is the last (timestamp, id) seen, so a deep page costs the same as the first one.
+ * Both sides of the union are read in index order from the covering history indexes and stop after a page
+ */
+@Service
+public class PaymentHistoryService {
+    private static final String COLUMNS = "id, sender_account_id, receiver_account_id, amount, timestamp";
+    private static final String NEWEST_FIRST = " order by timestamp desc, id desc";
+    private static final String BEFORE_CURSOR = " and (timestamp < ? or (timestamp = ? and id < ?))";
+
+    private static final String FIRST_PAGE = page("");
+    private static final String NEXT_PAGE = page(BEFORE_CURSOR);
+
+    // Same two sides as a page without the limits, self transfers are listed once, from the sender side
+    private static final String EXPORT_SENT = "select " + COLUMNS + " from payment where sender_account_id = ?" + NEWEST_FIRST;
+    private static final String EXPORT_RECEIVED = "select " + COLUMNS + " from payment where receiver_account_id = ? and sender_account_id <> ?" + NEWEST_FIRST;
+
+    private static final Comparator<PaymentHistoryItemDTO> NEWEST_FIRST_ORDER = Comparator
+            .comparing(PaymentHistoryItemDTO::getTimestamp)
+            .thenComparingLong(PaymentHistoryItemDTO::getTransactionId)
+            .reversed();
+
+    private static final RowMapper<PaymentHistoryItemDTO> ITEM = (rs, rowNum) -> new PaymentHistoryItemDTO(
+            rs.getLong("id"),
+            rs.getLong("sender_account_id"),
+            rs.getLong("receiver_account_id"),
+            Money.of(rs.getBigDecimal("amount")),
+            rs.getTimestamp("timestamp").toInstant());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final PaymentProperties.History history;
+
+    public PaymentHistoryService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 PaymentProperties paymentProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.history = paymentProperties.getHistory();
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * @param cursor nextCursor of the previous page, null for the newest payments
+     * @param limit  page size, null for the default, cut down to payment.history.max-page-size
+     */
+    public PaymentHistoryPageDTO page(Long accountId, String cursor, Integer limit) {
+        int size = limit == null ? history.getDefaultPageSize() : Math.max(1, Math.min(limit, history.getMaxPageSize()));
+        // One row more than asked tells whether there is a next page
+        int fetch = size + 1;
+
+        Position after = cursor == null ? null : Position.decode(cursor);
+        // Read-only, so it is served by the read-only database when one is configured
+        List<PaymentHistoryItemDTO> items = readOnlyTransactionTemplate.execute(status -> {
+            if (after == null) {
+                return jdbcTemplate.query(FIRST_PAGE, ITEM, accountId, fetch, accountId, accountId, fetch, fetch);
+            }
+            Timestamp timestamp = Timestamp.from(after.timestamp);
+            return jdbcTemplate.query(NEXT_PAGE, ITEM,
+                    accountId, timestamp, timestamp, after.id, fetch,
+                    accountId, accountId, timestamp, timestamp, after.id, fetch,
+                    fetch);
+        });
+
+        if (items.size() <= size) {
+            return new PaymentHistoryPageDTO(items, null);
+        }
+        List<PaymentHistoryItemDTO> pageItems = items.subList(0, size);
+        PaymentHistoryItemDTO last = pageItems.get(size - 1);
+        return new PaymentHistoryPageDTO(pageItems, new Position(last.getTimestamp(), last.getTransactionId()).encode());
+    }
+
+    /**
+     * Streams the whole history to the sink row by row, memory use does not grow with history length.
+     * The sent and received sides are two cursors in index order merged here, an OR over both columns would have
+     * the database sort the whole history before the first row
+     */
+    public void export(Long accountId, ItemSink sink) throws IOException {
+        try {
+            // Drivers like PostgreSQL honour the fetch size only outside auto-commit
+            readOnlyTransactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement sent = prepareExport(connection, EXPORT_SENT, accountId);
+                     PreparedStatement received = prepareExport(connection, EXPORT_RECEIVED, accountId, accountId);
+                     ResultSet sentRows = sent.executeQuery();
+                     ResultSet receivedRows = received.executeQuery()) {
+                    PaymentHistoryItemDTO nextSent = next(sentRows);
+                    PaymentHistoryItemDTO nextReceived = next(receivedRows);
+                    while (nextSent != null || nextReceived != null) {
+                        if (nextReceived == null || (nextSent != null && NEWEST_FIRST_ORDER.compare(nextSent, nextReceived) <= 0)) {
+                            sink.accept(nextSent);
+                            nextSent = next(sentRows);
+                        } else {
+                            sink.accept(nextReceived);
+                            nextReceived = next(receivedRows);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private PreparedStatement prepareExport(Connection connection, String sql, Long... parameters) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setFetchSize(history.getExportFetchSize());
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setLong(i + 1, parameters[i]);
+        }
+        return statement;
+    }
+
+    private static PaymentHistoryItemDTO next(ResultSet rows) throws SQLException {
+        return rows.next() ? ITEM.mapRow(rows, 0) : null;
+    }
+
+    private static String page(String condition) {
+        String sent = "select " + COLUMNS + " from payment where sender_account_id = ?" + condition + NEWEST_FIRST + " limit ?";
+        String received = "select " + COLUMNS + " from payment where receiver_account_id = ? and sender_account_id <> ?" + condition + NEWEST_FIRST + " limit ?";
+        return "select " + COLUMNS + " from ((" + sent + ") union all (" + received + ")) history" + NEWEST_FIRST + " limit ?";
+    }
+
+    @FunctionalInterface
+    public interface ItemSink {
+        void accept(PaymentHistoryItemDTO item) throws IOException;
+    }
+
+    /**
+     * Last (timestamp, id) of a page, Base64 so clients do not build cursors themselves
+     */
+    private static class Position {
+        private final Instant timestamp;
+        private final long id;
+
+        private Position(Instant timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        private String encode() {
+            String plain = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private static Position decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split(":");
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Expected 3 parts, got " + parts.length);
+                }
+                return new Position(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new TransactionException("Invalid page cursor", TransactionException.TransactionErrorCode.INVALID_PAGE_CURSOR);
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Incremental check of account balances against the payment table. Every account has a checkpoint: its opening
+ * balance plus all of its payments stamped before the checkpoint horizon. A run reads only the payments since the
+ * checkpoint (through the per-account history indexes), compares checkpoint plus those payments with the balance and
+ * moves the checkpoint up to the new horizon, so the cost follows the payments since the last run, not the table size.
+ * Account id ranges are reconciled in parallel on a fork-join pool, one transaction per chunk.
+ * Like {@link LedgerService#verify()}, a transfer committing while its account is read shows up as drift, repeat before acting on it
+ */
+@Service
+@Profile("!" + InMemoryPaymentService.PROFILE)
+@Slf4j
+public class ReconciliationService {
+    private static final int MAX_REPORTED_DRIFTS = 1000;
+    private static final Timestamp NO_CHECKPOINT = Timestamp.from(Instant.EPOCH);
+
+    private static final String ACCOUNT_RANGE = "select min(id) as min_id, max(id) as max_id from account";
+
+    // Payments since the checkpoint and since the new horizon, both sides read from the covering history indexes
+    private static final String CHUNK = "select a.id,"
+            + " a.balance + coalesce((select sum(s.balance) from account_balance_slot s where s.account_id = a.id), 0) as balance,"
+            + " coalesce(c.balance, a.opening_balance) as checkpoint_balance, c.horizon,"
+            + " coalesce((select sum(p.amount) from payment p where p.receiver_account_id = a.id and p.timestamp >= coalesce(c.horizon, ?)), 0)"
+            + " - coalesce((select sum(p.amount) from payment p where p.sender_account_id = a.id and p.timestamp >= coalesce(c.horizon, ?)), 0) as since_checkpoint,"
+            + " coalesce((select sum(p.amount) from payment p where p.receiver_account_id = a.id and p.timestamp >= ?), 0)"
+            + " - coalesce((select sum(p.amount) from payment p where p.sender_account_id = a.id and p.timestamp >= ?), 0) as since_horizon"
+            + " from account a left join account_checkpoint c on c.account_id = a.id"
+            + " where a.id between ? and ?"
+            + " order by a.id";
+
+    private static final String SAVE_CHECKPOINT = "merge into account_checkpoint (account_id, balance, horizon) key (account_id) values (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentProperties.Reconciliation properties;
+    private final ForkJoinPool pool;
+    private final Timer duration;
+
+    private volatile Reconciliation last;
+
+    public ReconciliationService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 PaymentProperties paymentProperties,
+                                 MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = paymentProperties.getReconciliation();
+        this.pool = new ForkJoinPool(properties.getParallelism());
+        this.duration = Timer.builder("payment.reconciliation")
+                .description("Reconciliation runs")
+                .register(meterRegistry);
+        Gauge.builder("payment.reconciliation.drift", this, service -> service.last == null ? 0 : service.last.getDriftCount())
+                .description("Accounts whose balance did not match their payments in the last run")
+                .register(meterRegistry);
+        Gauge.builder("payment.reconciliation.accounts", this, service -> service.last == null ? 0 : service.last.getAccountsChecked())
+                .description("Accounts checked in the last run")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${payment.reconciliation.interval-ms:60000}")
+    public void scheduledRun() {
+        if (properties.isEnabled()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * @return null before the first run
+     */
+    public Reconciliation getLast() {
+        return last;
+    }
+
+    /**
+     * One run at a time, checkpoints of a chunk are moved by a single run only
+     */
+    public synchronized Reconciliation reconcile() {
+        // Whole millis, the stored horizon compares exactly like the one used for the run
+        Instant horizon = Instant.now().minus(properties.getSettleLag()).truncatedTo(ChronoUnit.MILLIS);
+        Timer.Sample sample = Timer.start();
+
+        Map<String, Object> range = jdbcTemplate.queryForMap(ACCOUNT_RANGE);
+        Reconciliation reconciliation = range.get("min_id") == null
+                ? new Reconciliation(horizon)
+                : pool.invoke(new Chunk(((Number) range.get("min_id")).longValue(), ((Number) range.get("max_id")).longValue(), Timestamp.from(horizon)));
+
+        sample.stop(duration);
+        last = reconciliation;
+        if (reconciliation.getDriftCount() > 0) {
+            log.warn("Reconciliation up to {}: {} of {} accounts do not match their payments",
+                    horizon, reconciliation.getDriftCount(), reconciliation.getAccountsChecked());
+        }
+        return reconciliation;
+    }
+
+    private Reconciliation reconcileChunk(long fromId, long toId, Timestamp horizon) {
+        return transactionTemplate.execute(status -> {
+            Reconciliation reconciliation = new Reconciliation(horizon.toInstant());
+            List<Object[]> checkpoints = new ArrayList<>();
+            jdbcTemplate.query(CHUNK, rs -> {
+                long accountId = rs.getLong("id");
+                Money balance = Money.of(rs.getBigDecimal("balance"));
+                Money checkpoint = Money.of(rs.getBigDecimal("checkpoint_balance"));
+                Timestamp checkpointHorizon = rs.getTimestamp("horizon");
+                Money sinceCheckpoint = Money.of(rs.getBigDecimal("since_checkpoint"));
+                Money sinceHorizon = Money.of(rs.getBigDecimal("since_horizon"));
+
+                reconciliation.check(accountId, balance, checkpoint.plus(sinceCheckpoint));
+                // A checkpoint already past the horizon (settle lag made shorter) stays where it is
+                if (checkpointHorizon == null || checkpointHorizon.before(horizon)) {
+                    checkpoints.add(new Object[]{accountId, checkpoint.plus(sinceCheckpoint).minus(sinceHorizon).toBigDecimal(), horizon});
+                    reconciliation.checkpointsMoved++;
+                }
+            }, NO_CHECKPOINT, NO_CHECKPOINT, horizon, horizon, fromId, toId);
+            jdbcTemplate.batchUpdate(SAVE_CHECKPOINT, checkpoints);
+            return reconciliation;
+        });
+    }
+
+    /**
+     * Splits the account id range in halves down to payment.reconciliation.chunk-size ids
+     */
+    private final class Chunk extends RecursiveTask<Reconciliation> {
+        private final long fromId;
+        private final long toId;
+        private final Timestamp horizon;
+
+        private Chunk(long fromId, long toId, Timestamp horizon) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.horizon = horizon;
+        }
+
+        @Override
+        protected Reconciliation compute() {
+            if (toId - fromId < properties.getChunkSize()) {
+                return reconcileChunk(fromId, toId, horizon);
+            }
+            long middle = fromId + (toId - fromId) / 2;
+            Chunk lower = new Chunk(fromId, middle, horizon);
+            Chunk upper = new Chunk(middle + 1, toId, horizon);
+            upper.fork();
+            Reconciliation result = lower.compute();
+            return result.merge(upper.join());
+        }
+    }
+
+    @Getter
+    public static class Reconciliation {
+        private final Instant horizon;
+        private long accountsChecked;
+        private long checkpointsMoved;
+        private long driftCount;
+        private final List<Drift> drifts = new ArrayList<>();
+
+        private Reconciliation(Instant horizon) {
+            this.horizon = horizon;
+        }
+
+        private void check(Long accountId, Money balance, Money paymentsBalance) {
+            accountsChecked++;
+            if (paymentsBalance.equals(balance)) {
+                return;
+            }
+            driftCount++;
+            if (drifts.size() < MAX_REPORTED_DRIFTS) {
+                drifts.add(new Drift(accountId, balance, paymentsBalance));
+            }
+        }
+
+        private Reconciliation merge(Reconciliation other) {
+            accountsChecked += other.accountsChecked;
+            checkpointsMoved += other.checkpointsMoved;
+            driftCount += other.driftCount;
+            drifts.addAll(other.drifts.subList(0, Math.min(other.drifts.size(), MAX_REPORTED_DRIFTS - drifts.size())));
+            return this;
+        }
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Drift {
+        private final Long accountId;
+        private final Money balance;
+        /**
+         * Opening balance plus every payment of the account
+         */
+        private final Money paymentsBalance;
+    }
+}
@@ -0,0 +1,157 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.AccountBalanceSlot;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountBalanceSlotRepository;
+import com.rindago.payment.repository.AccountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Balance of a hot account is split into the account row and N slot rows.
+ * Credits land on a random slot and never touch the account row. Everything that lowers
+ * a slot (debits, consolidation) first locks the account row, so those are serialized
+ * while credits keep flowing.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShardedBalanceService {
+
+    private final AccountRepository accountRepository;
+    private final AccountBalanceSlotRepository slotRepository;
+    private final PaymentProperties paymentProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferMetrics transferMetrics;
+
+    public boolean isSharded(Long accountId) {
+        PaymentProperties.Sharding sharding = paymentProperties.getSharding();
+        return sharding.isEnabled() && sharding.getHotAccounts().contains(accountId);
+    }
+
+    /**
+     * Row plus balance slots of a hot account, the row alone for any other account, which then costs no query
+     */
+    public Money balance(Account account) {
+        return isSharded(account.getId()) ? account.getBalance().plus(Money.of(slotRepository.sumByAccountId(account.getId()))) : account.getBalance();
+    }
+
+    /**
+     * @return 0 when account does not exist
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public int credit(Long accountId, Money amount) {
+        int slot = ThreadLocalRandom.current().nextInt(paymentProperties.getSharding().getSlots());
+        int updated = slotRepository.credit(accountId, slot, amount.toBigDecimal());
+        // Slots are created on startup, account opened later still works through its row
+        return updated > 0 ? updated : accountRepository.deposit(accountId, amount);
+    }
+
+    /**
+     * Takes amount from the account row first and sweeps the rest from slots in slot order
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void debit(Long accountId, Money amount) {
+        Account account = transferMetrics.recordLockWait(() -> accountRepository.findByIdForUpdate(accountId))
+                .orElseThrow(() -> new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER));
+
+        // Slots only grow while we hold the row lock, so aggregate read here is a safe lower bound
+        if (amount.isGreaterThan(balance(account))) {
+            throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+        }
+
+        Money fromRow = account.getBalance().min(amount);
+        account.setBalance(account.getBalance().minus(fromRow));
+
+        BigDecimal remaining = amount.minus(fromRow).toBigDecimal();
+        for (AccountBalanceSlot slot : slotRepository.findByAccountIdOrderBySlot(accountId)) {
+            if (remaining.signum() == 0) {
+                break;
+            }
+            BigDecimal take = remaining.min(slot.getBalance());
+            if (take.signum() > 0 && slotRepository.take(slot.getId(), take) > 0) {
+                remaining = remaining.subtract(take);
+            }
+        }
+
+        if (remaining.signum() > 0) {
+            throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.sharding.consolidation-interval-ms:10000}")
+    public void scheduledConsolidation() {
+        if (paymentProperties.getSharding().isEnabled()) {
+            consolidateAll();
+        }
+    }
+
+    /**
+     * Folds slot balances back into account rows, one transaction per account
+     */
+    public void consolidateAll() {
+        for (Long accountId : slotRepository.findShardedAccountIds()) {
+            transactionTemplate.executeWithoutResult(status -> consolidate(accountId));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSlots() {
+        if (!paymentProperties.getSharding().isEnabled()) {
+            return;
+        }
+        for (Long accountId : paymentProperties.getSharding().getHotAccounts()) {
+            transactionTemplate.executeWithoutResult(status -> createSlots(accountId));
+        }
+    }
+
+    private void createSlots(Long accountId) {
+        if (!accountRepository.existsById(accountId)) {
+            log.warn("Hot account {} does not exist, balance slots are not created", accountId);
+            return;
+        }
+        Set<Integer> existing = slotRepository.findByAccountIdOrderBySlot(accountId).stream()
+                .map(AccountBalanceSlot::getSlot)
+                .collect(Collectors.toSet());
+        for (int slot = 0; slot < paymentProperties.getSharding().getSlots(); slot++) {
+            if (!existing.contains(slot)) {
+                slotRepository.save(new AccountBalanceSlot(null, accountId, slot, BigDecimal.ZERO));
+            }
+        }
+    }
+
+    /**
+     * Empties every slot of the account, caller holds the account row lock and adds the result to the row
+     *
+     * @return amount taken from the slots
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Money drainSlots(Long accountId) {
+        BigDecimal moved = BigDecimal.ZERO;
+        for (AccountBalanceSlot slot : slotRepository.findByAccountIdOrderBySlot(accountId)) {
+            if (slot.getBalance().signum() > 0 && slotRepository.take(slot.getId(), slot.getBalance()) > 0) {
+                moved = moved.add(slot.getBalance());
+            }
+        }
+        return Money.of(moved);
+    }
+
+    private void consolidate(Long accountId) {
+        accountRepository.findByIdForUpdate(accountId).ifPresent(account ->
+                account.setBalance(account.getBalance().plus(drainSlots(accountId))));
+    }
+}
@@ -0,0 +1,137 @@
+package com.rindago.payment.service;
+
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.exceptions.TransactionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the transfer path. All timers publish histograms so latency percentiles can be aggregated in Prometheus
+ */
+@Component
+public class TransferMetrics {
+    public static final String OUTCOME_OK = "OK";
+    public static final String OUTCOME_ERROR = "ERROR";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Phase, Timer> phaseTimers = new EnumMap<>(Phase.class);
+    private final Map<Path, Map<String, Timer>> transferTimers = new EnumMap<>(Path.class);
+    private final Timer lockWaitTimer;
+    private final Counter retryCounter;
+    private final Counter retryExhaustedCounter;
+
+    public TransferMetrics(MeterRegistry meterRegistry, PaymentProperties paymentProperties) {
+        this.meterRegistry = meterRegistry;
+        for (Path path : Path.values()) {
+            Map<String, Timer> byOutcome = new HashMap<>();
+            // Lanes wrap every transfer applied by this node's own transaction
+            boolean lanes = path.ownTransaction && paymentProperties.getLanes().isEnabled();
+            byOutcome.put(OUTCOME_OK, transferTimer(path, lanes, OUTCOME_OK));
+            byOutcome.put(OUTCOME_ERROR, transferTimer(path, lanes, OUTCOME_ERROR));
+            for (TransactionException.TransactionErrorCode code : TransactionException.TransactionErrorCode.values()) {
+                byOutcome.put(code.name(), transferTimer(path, lanes, code.name()));
+            }
+            transferTimers.put(path, byOutcome);
+        }
+        for (Phase phase : Phase.values()) {
+            phaseTimers.put(phase, Timer.builder("payment.transfer.phase")
+                    .description("Time spent in one phase of a transfer")
+                    .tag("phase", phase.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        this.lockWaitTimer = Timer.builder("payment.transfer.lock.wait")
+                .description("Time to read and lock one account row")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.retryCounter = meterRegistry.counter("payment.transfer.retries");
+        this.retryExhaustedCounter = meterRegistry.counter("payment.transfer.retries.exhausted");
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopPhase(Timer.Sample sample, Phase phase) {
+        sample.stop(phaseTimers.get(phase));
+    }
+
+    /**
+     * @param path    how the transfer was actually applied
+     * @param outcome {@link #OUTCOME_OK}, {@link #OUTCOME_ERROR} or rejection error code
+     */
+    public void stopTransfer(Timer.Sample sample, Path path, String outcome) {
+        sample.stop(transferTimers.get(path).get(outcome));
+    }
+
+    public <T> T recordLockWait(Supplier<T> lookup) {
+        return lockWaitTimer.record(lookup);
+    }
+
+    public void retried() {
+        retryCounter.increment();
+    }
+
+    public void retriesExhausted() {
+        retryExhaustedCounter.increment();
+    }
+
+    private Timer transferTimer(Path path, boolean lanes, String outcome) {
+        return Timer.builder("payment.transfer")
+                .description("Whole transfer including commit and retries")
+                .tag("path", path.name())
+                .tag("lanes", String.valueOf(lanes))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public enum Path {
+        /**
+         * Transfer modes of a transfer in its own transaction, see PaymentProperties.TransferMode
+         */
+        OPTIMISTIC(true),
+        PESSIMISTIC(true),
+        ATOMIC_UPDATE(true),
+        /**
+         * Conditional updates with balance slots, one of the accounts is hot
+         */
+        HOT_ACCOUNT(true),
+        GROUP_COMMIT(false),
+        /**
+         * In-memory transfer engine
+         */
+        ENGINE(false);
+
+        private final boolean ownTransaction;
+
+        Path(boolean ownTransaction) {
+            this.ownTransaction = ownTransaction;
+        }
+    }
+
+    public enum Phase {
+        /**
+         * Waiting for the account lanes, no connection is held yet
+         */
+        LANE,
+        /**
+         * Loading (and locking) both accounts
+         */
+        LOOKUP,
+        CHECK,
+        /**
+         * Conditional debit/credit statements of the atomic path
+         */
+        UPDATE,
+        FLUSH
+    }
+}
@@ -0,0 +1,60 @@
+package com.rindago.payment.service.engine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Point-in-time copy of all engine balances. Journal generation tells which journal file continues after it
+ */
+final class BalanceSnapshot {
+    private static final int MAGIC = 0x50415931;
+
+    final long lastTransactionId;
+    final long journalGeneration;
+    final LongLongMap balances;
+
+    BalanceSnapshot(long lastTransactionId, long journalGeneration, LongLongMap balances) {
+        this.lastTransactionId = lastTransactionId;
+        this.journalGeneration = journalGeneration;
+        this.balances = balances;
+    }
+
+    /**
+     * Written to a temporary file and moved over the old snapshot, so a crash leaves either the old or the new one
+     */
+    void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fileStream = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+            out.writeInt(MAGIC);
+            out.writeLong(lastTransactionId);
+            out.writeLong(journalGeneration);
+            out.writeInt(balances.size());
+            balances.forEach((accountId, balance) -> {
+                out.writeLong(accountId);
+                out.writeLong(balance);
+            });
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static BalanceSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a balance snapshot " + file);
+            }
+            long lastTransactionId = in.readLong();
+            long journalGeneration = in.readLong();
+            int size = in.readInt();
+            LongLongMap balances = new LongLongMap(size);
+            for (int i = 0; i < size; i++) {
+                balances.put(in.readLong(), in.readLong());
+            }
+            return new BalanceSnapshot(lastTransactionId, journalGeneration, balances);
+        }
+    }
+}
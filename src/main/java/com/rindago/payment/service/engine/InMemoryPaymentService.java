@@ -0,0 +1,114 @@
+package com.rindago.payment.service.engine;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.exceptions.OutcomeUnknownException;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.PaymentRepository;
+import com.rindago.payment.service.IdempotentTransfer;
+import com.rindago.payment.service.PaymentService;
+import com.rindago.payment.service.TransferMetrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transfers applied by {@link InMemoryTransferEngine}, enabled with the in-memory profile
+ */
+@Service
+@Profile(InMemoryPaymentService.PROFILE)
+public class InMemoryPaymentService implements PaymentService {
+    public static final String PROFILE = "in-memory";
+
+    private final InMemoryTransferEngine transferEngine;
+    private final PaymentRepository paymentRepository;
+    private final TransferMetrics transferMetrics;
+    private final Duration timeout;
+
+    /**
+     * Holds the pending transfer too, so a key repeated while the first request is in flight waits for it
+     */
+    private final AsyncCache<String, IdempotentTransfer> idempotencyCache;
+
+    public InMemoryPaymentService(InMemoryTransferEngine transferEngine,
+                                  PaymentRepository paymentRepository,
+                                  TransferMetrics transferMetrics,
+                                  PaymentProperties paymentProperties) {
+        this.transferEngine = transferEngine;
+        this.paymentRepository = paymentRepository;
+        this.transferMetrics = transferMetrics;
+        this.timeout = paymentProperties.getEngine().getTimeout();
+        this.idempotencyCache = Caffeine.newBuilder()
+                .maximumSize(paymentProperties.getIdempotency().getCacheSize())
+                .expireAfterWrite(paymentProperties.getIdempotency().getCacheTtl())
+                .buildAsync();
+    }
+
+    @Override
+    public Transaction performTransaction(Money amount, Long fromAccountId, Long toAccountId, String idempotencyKey) {
+
+        if (amount.signum() < 0) {
+            throw new TransactionException("Cant be less then 0", TransactionException.TransactionErrorCode.ZERO_AMOUNT);
+        }
+
+        long cents = amount.getCents();
+
+        if (idempotencyKey == null) {
+            return await(submit(fromAccountId, toAccountId, cents, null));
+        }
+
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > Payment.IDEMPOTENCY_KEY_LENGTH) {
+            throw new TransactionException("Idempotency key must be 1 to " + Payment.IDEMPOTENCY_KEY_LENGTH + " characters", TransactionException.TransactionErrorCode.INVALID_IDEMPOTENCY_KEY);
+        }
+
+        // Failed futures are dropped by the cache, so a rejected transfer can be retried with the same key
+        return await(idempotencyCache.get(idempotencyKey, (key, executor) ->
+                CompletableFuture.supplyAsync(() -> findByIdempotencyKey(key), executor)
+                        .thenCompose(replay -> replay.map(CompletableFuture::completedFuture)
+                                .orElseGet(() -> submit(fromAccountId, toAccountId, cents, key)
+                                        .thenApply(transaction -> new IdempotentTransfer(transaction, amount, fromAccountId, toAccountId))))))
+                .replay(amount, fromAccountId, toAccountId);
+    }
+
+    /**
+     * Timed from publishing to the answer of the engine, without the wait of the request thread
+     */
+    private CompletableFuture<Transaction> submit(long fromAccountId, long toAccountId, long cents, String idempotencyKey) {
+        Timer.Sample sample = transferMetrics.start();
+        return transferEngine.submit(fromAccountId, toAccountId, cents, idempotencyKey).whenComplete((transaction, failure) ->
+                transferMetrics.stopTransfer(sample, TransferMetrics.Path.ENGINE, failure == null ? TransferMetrics.OUTCOME_OK
+                        : failure instanceof TransactionException ? ((TransactionException) failure).getErrorCode() : TransferMetrics.OUTCOME_ERROR));
+    }
+
+    private Optional<IdempotentTransfer> findByIdempotencyKey(String idempotencyKey) {
+        return paymentRepository.findTransactionByIdempotencyKey(idempotencyKey).map(IdempotentTransfer::of);
+    }
+
+    private <T> T await(CompletableFuture<T> transaction) {
+        try {
+            return transaction.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TransactionException) {
+                throw (TransactionException) e.getCause();
+            }
+            throw new IllegalStateException("Transfer failed", e.getCause());
+        } catch (TimeoutException e) {
+            // Journaled transfers are projected later, answering them twice would apply them twice
+            throw new OutcomeUnknownException("Transfer not confirmed within " + timeout
+                    + " and may still be applied, check the payment history before sending it again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Transfer interrupted", TransactionException.TransactionErrorCode.CONCURRENT_UPDATE);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.rindago.payment.service.engine;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.service.PaymentService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Single writer transfer engine. Requests go through a ring buffer to one thread that owns all balances,
+ * so a transfer is a check and two array writes, no locks and no database round-trip.
+ * <ol>
+ *     <li>Writer: checks and applies the transfer, appends it to the journal and fsyncs the journal once per batch</li>
+ *     <li>Projector: writes new balances and payment rows of the batch to the database in one transaction</li>
+ * </ol>
+ * Balances are recovered from the last snapshot plus the journal written after it. A failed projection is retried with
+ * the next batch, its transfers are answered only once projected. The journal replaced by a snapshot is kept until
+ * all of its transfers are projected, so a start projects the payments the database is missing from the journal.
+ * Accounts are loaded lazily: the first transfer touching an account carries its balance read from the database.
+ * Assumes this node is the only one changing balances of the accounts it knows.
+ */
+@Component
+@Profile(InMemoryPaymentService.PROFILE)
+@Slf4j
+public class InMemoryTransferEngine {
+    private static final String SNAPSHOT_FILE = "balances.snapshot";
+    private static final Pattern JOURNAL_FILE = Pattern.compile("journal-(\\d+)\\.log");
+
+    private static final String UPDATE_BALANCE = "update account set balance = ?, version = version + 1 where id = ?";
+    // A key taken already is left out instead of failing the whole batch, the transfer is applied and needs its row
+    private static final String INSERT_PAYMENT = "insert into payment (id, sender_account_id, receiver_account_id, amount, timestamp, idempotency_key)"
+            + " values (?, ?, ?, ?, ?, case when exists (select 1 from payment where idempotency_key = ?) then null else cast(? as varchar(64)) end)";
+    private static final int PROJECTION_ATTEMPTS = 3;
+    private static final long PROJECTION_BACKOFF_MILLIS = 50;
+
+    private final PaymentProperties.Engine engine;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+
+    /**
+     * Accounts the writer holds a balance for, read by request threads to skip the seed query
+     */
+    private final Set<Long> knownAccounts = ConcurrentHashMap.newKeySet();
+
+    // Owned by the writer thread after start
+    private LongLongMap balances;
+    private TransferJournal journal;
+    private long journalGeneration;
+    private long lastTransactionId;
+    private long transfersSinceSnapshot;
+    private Path retiredJournal;
+    private long retiredUpTo;
+
+    /**
+     * Last transaction in the payment table, set by the projector
+     */
+    private volatile long projectedUpTo;
+
+    private Disruptor<TransferEvent> disruptor;
+    private volatile RingBuffer<TransferEvent> ringBuffer;
+
+    public InMemoryTransferEngine(PaymentProperties paymentProperties, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.engine = paymentProperties.getEngine();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.directory = Paths.get(engine.getDirectory());
+    }
+
+    /**
+     * Started once the schema exists, balances and the payments after the last one in the database are projected
+     * again in case the database missed the last batches
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        Long maxPaymentId = jdbcTemplate.queryForObject("select max(id) from payment", Long.class);
+        projectedUpTo = maxPaymentId == null ? 0 : maxPaymentId;
+        List<Object[]> paymentRows = new ArrayList<>();
+        List<Path> projectedJournals = recover(paymentRows);
+        lastTransactionId = Math.max(lastTransactionId, projectedUpTo);
+
+        List<Object[]> rows = new ArrayList<>(balances.size());
+        balances.forEach((accountId, balance) -> rows.add(new Object[]{toAmount(balance), accountId}));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(UPDATE_BALANCE, rows);
+            jdbcTemplate.batchUpdate(INSERT_PAYMENT, paymentRows);
+        });
+        projectedUpTo = lastTransactionId;
+        for (Path file : projectedJournals) {
+            Files.delete(file);
+        }
+        balances.forEach((accountId, balance) -> knownAccounts.add(accountId));
+        if (!paymentRows.isEmpty()) {
+            log.warn("Projected {} payments missing in the database from the journal", paymentRows.size());
+        }
+
+        disruptor = new Disruptor<>(TransferEvent::new, engine.getRingSize(), DaemonThreadFactory.INSTANCE, ProducerType.MULTI, new BlockingWaitStrategy());
+        disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler());
+        disruptor.handleEventsWith(new Writer()).then(new Projector());
+        ringBuffer = disruptor.start();
+        log.info("Transfer engine started with {} accounts, last transaction {}", balances.size(), lastTransactionId);
+    }
+
+    /**
+     * Drains the ring buffer and leaves a snapshot, so the next start replays nothing
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (ringBuffer == null) {
+            return;
+        }
+        ringBuffer = null;
+        disruptor.shutdown();
+        if (retiredJournal == null) {
+            snapshot();
+        }
+        dropRetiredJournal();
+        journal.close();
+    }
+
+    public CompletableFuture<PaymentService.Transaction> submit(long fromAccountId, long toAccountId, long amount, String idempotencyKey) {
+        RingBuffer<TransferEvent> ring = ringBuffer;
+        if (ring == null) {
+            throw new IllegalStateException("Transfer engine is not running");
+        }
+        long fromSeed = seed(fromAccountId);
+        long toSeed = fromAccountId == toAccountId ? TransferEvent.NO_SEED : seed(toAccountId);
+        CompletableFuture<PaymentService.Transaction> result = new CompletableFuture<>();
+        ring.publishEvent((event, sequence) -> event.request(fromAccountId, toAccountId, amount, fromSeed, toSeed, idempotencyKey, result));
+        return result;
+    }
+
+    private long seed(long accountId) {
+        if (knownAccounts.contains(accountId)) {
+            return TransferEvent.NO_SEED;
+        }
+        // May be stale by the time the writer sees it, writer ignores seeds of accounts it already knows
+        return jdbcTemplate.query("select balance from account where id = ?",
+                rs -> rs.next() ? Money.of(rs.getBigDecimal(1)).getCents() : TransferEvent.ABSENT, accountId);
+    }
+
+    /**
+     * @param paymentRows collects the journaled transfers after the last one in the payment table
+     * @return journals replaced by the snapshot, to be deleted once their payments are projected
+     */
+    private List<Path> recover(List<Object[]> paymentRows) throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        long firstGeneration = 0;
+        if (Files.exists(snapshotFile)) {
+            BalanceSnapshot snapshot = BalanceSnapshot.read(snapshotFile);
+            balances = snapshot.balances;
+            lastTransactionId = snapshot.lastTransactionId;
+            firstGeneration = snapshot.journalGeneration;
+        } else {
+            balances = new LongLongMap(1024);
+        }
+
+        SortedMap<Long, Path> journals = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = JOURNAL_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    journals.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+
+        long skipUpTo = lastTransactionId;
+        long projected = projectedUpTo;
+        List<Path> retired = new ArrayList<>();
+        journalGeneration = firstGeneration;
+        for (Map.Entry<Long, Path> entry : journals.entrySet()) {
+            if (entry.getKey() < firstGeneration) {
+                // Balances are contained in the snapshot, only payments may be missing
+                try (TransferJournal old = new TransferJournal(entry.getValue(), engine.getJournalRegionSize())) {
+                    old.replay(new TransferJournal.Listener() {
+                        @Override
+                        public void transfer(long transactionId, long fromAccountId, long toAccountId, long amount, long timestamp, String idempotencyKey) {
+                            if (transactionId > projected) {
+                                paymentRows.add(paymentRow(transactionId, fromAccountId, toAccountId, amount, timestamp, idempotencyKey));
+                            }
+                        }
+
+                        @Override
+                        public void seed(long accountId, long balance) {
+                        }
+                    });
+                }
+                retired.add(entry.getValue());
+                continue;
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            journalGeneration = entry.getKey();
+            journal = new TransferJournal(entry.getValue(), engine.getJournalRegionSize());
+            journal.replay(new TransferJournal.Listener() {
+                @Override
+                public void transfer(long transactionId, long fromAccountId, long toAccountId, long amount, long timestamp, String idempotencyKey) {
+                    if (transactionId > projected) {
+                        paymentRows.add(paymentRow(transactionId, fromAccountId, toAccountId, amount, timestamp, idempotencyKey));
+                    }
+                    if (transactionId <= skipUpTo) {
+                        return;
+                    }
+                    balances.put(fromAccountId, balances.get(fromAccountId) - amount);
+                    balances.put(toAccountId, balances.get(toAccountId) + amount);
+                    lastTransactionId = Math.max(lastTransactionId, transactionId);
+                }
+
+                @Override
+                public void seed(long accountId, long balance) {
+                    if (balances.get(accountId) == LongLongMap.MISSING) {
+                        balances.put(accountId, balance);
+                    }
+                }
+            });
+        }
+        if (journal == null) {
+            journal = new TransferJournal(journalFile(journalGeneration), engine.getJournalRegionSize());
+        }
+        return retired;
+    }
+
+    /**
+     * Writes the snapshot, then starts the next journal generation. The previous one is dropped once the projector
+     * has caught up with it
+     */
+    private void snapshot() throws IOException {
+        journal.force();
+        new BalanceSnapshot(lastTransactionId, journalGeneration + 1, balances).write(directory.resolve(SNAPSHOT_FILE));
+        journal.close();
+        retiredJournal = journal.getFile();
+        retiredUpTo = lastTransactionId;
+        journalGeneration++;
+        journal = new TransferJournal(journalFile(journalGeneration), engine.getJournalRegionSize());
+        transfersSinceSnapshot = 0;
+    }
+
+    private void dropRetiredJournal() throws IOException {
+        if (retiredJournal != null && projectedUpTo >= retiredUpTo) {
+            Files.delete(retiredJournal);
+            retiredJournal = null;
+        }
+    }
+
+    private Path journalFile(long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    private static BigDecimal toAmount(long cents) {
+        return Money.ofCents(cents).toBigDecimal();
+    }
+
+    private static PaymentService.Transaction toTransaction(TransferEvent event) {
+        return new PaymentService.Transaction(event.transactionId, Instant.ofEpochMilli(event.timestamp));
+    }
+
+    private static Object[] paymentRow(long transactionId, long fromAccountId, long toAccountId, long amount, long timestamp, String idempotencyKey) {
+        return new Object[]{transactionId, fromAccountId, toAccountId, toAmount(amount),
+                Timestamp.from(Instant.ofEpochMilli(timestamp)), idempotencyKey, idempotencyKey};
+    }
+
+    private final class Writer implements EventHandler<TransferEvent> {
+        // Applied but not yet fsynced, only answered here when not waiting for the projection
+        private final List<TransferEvent> batch = new ArrayList<>();
+
+        @Override
+        public void onEvent(TransferEvent event, long sequence, boolean endOfBatch) {
+            try {
+                apply(event);
+            } catch (TransactionException e) {
+                event.failure = e;
+            } catch (IOException e) {
+                event.failure = new UncheckedIOException("Transfer journal write failed", e);
+            }
+            if (event.failure != null) {
+                // Rejections change nothing, so they need not wait for the fsync
+                event.result.completeExceptionally(event.failure);
+            } else if (!engine.isAckAfterProjection()) {
+                batch.add(event);
+            }
+
+            if (endOfBatch) {
+                endBatch();
+            }
+        }
+
+        private void apply(TransferEvent event) throws IOException {
+            long fromBalance = balance(event.fromAccountId, event.fromSeed);
+            if (fromBalance == LongLongMap.MISSING) {
+                throw new TransactionException("Sender account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+            }
+            if (event.amount > fromBalance) {
+                throw new TransactionException("Sender balance is not enough", TransactionException.TransactionErrorCode.NOT_ENOUGH_AMOUNT);
+            }
+            if (balance(event.toAccountId, event.toSeed) == LongLongMap.MISSING) {
+                throw new TransactionException("Receiver account not found", TransactionException.TransactionErrorCode.NOT_FOUND_OWNER);
+            }
+
+            long transactionId = lastTransactionId + 1;
+            long timestamp = System.currentTimeMillis();
+            // Journal first, a failed append leaves the balances untouched
+            journal.appendTransfer(transactionId, event.fromAccountId, event.toAccountId, event.amount, timestamp, event.idempotencyKey);
+            lastTransactionId = transactionId;
+            transfersSinceSnapshot++;
+
+            balances.put(event.fromAccountId, fromBalance - event.amount);
+            // Read again, sender and receiver may be the same account
+            balances.put(event.toAccountId, balances.get(event.toAccountId) + event.amount);
+
+            event.transactionId = transactionId;
+            event.timestamp = timestamp;
+            event.fromBalanceAfter = balances.get(event.fromAccountId);
+            event.toBalanceAfter = balances.get(event.toAccountId);
+        }
+
+        private long balance(long accountId, long seed) throws IOException {
+            long balance = balances.get(accountId);
+            if (balance != LongLongMap.MISSING || seed == TransferEvent.NO_SEED || seed == TransferEvent.ABSENT) {
+                return balance;
+            }
+            journal.appendSeed(accountId, seed);
+            balances.put(accountId, seed);
+            knownAccounts.add(accountId);
+            return seed;
+        }
+
+        private void endBatch() {
+            try {
+                journal.force();
+            } catch (RuntimeException e) {
+                log.error("Transfer journal fsync failed, {} transfers are not durable", batch.size(), e);
+                batch.forEach(event -> event.result.completeExceptionally(e));
+                batch.clear();
+                return;
+            }
+            batch.forEach(event -> event.result.complete(toTransaction(event)));
+            batch.clear();
+
+            try {
+                dropRetiredJournal();
+                // One retired journal at most, the next snapshot waits for the projector
+                if (transfersSinceSnapshot >= engine.getSnapshotEvery() && retiredJournal == null) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                log.error("Balance snapshot failed, journal keeps growing", e);
+            }
+        }
+    }
+
+    /**
+     * Rows of a failed projection stay ahead of the next batch, so the payment table always holds a prefix of the journal
+     */
+    private final class Projector implements EventHandler<TransferEvent> {
+        private final List<Object[]> balanceRows = new ArrayList<>();
+        private final List<Object[]> paymentRows = new ArrayList<>();
+        // Answered once projected, ring buffer slots are reused so the outcome is copied
+        private final List<CompletableFuture<PaymentService.Transaction>> results = new ArrayList<>();
+        private final List<PaymentService.Transaction> transactions = new ArrayList<>();
+        private long batchUpTo;
+
+        @Override
+        public void onEvent(TransferEvent event, long sequence, boolean endOfBatch) throws InterruptedException {
+            if (event.isApplied()) {
+                balanceRows.add(new Object[]{toAmount(event.fromBalanceAfter), event.fromAccountId});
+                balanceRows.add(new Object[]{toAmount(event.toBalanceAfter), event.toAccountId});
+                paymentRows.add(paymentRow(event.transactionId, event.fromAccountId, event.toAccountId, event.amount, event.timestamp, event.idempotencyKey));
+                batchUpTo = event.transactionId;
+                if (engine.isAckAfterProjection()) {
+                    results.add(event.result);
+                    transactions.add(toTransaction(event));
+                }
+            }
+            if (endOfBatch && !paymentRows.isEmpty()) {
+                project();
+            }
+        }
+
+        private void project() throws InterruptedException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.batchUpdate(UPDATE_BALANCE, balanceRows);
+                        jdbcTemplate.batchUpdate(INSERT_PAYMENT, paymentRows);
+                    });
+                    break;
+                } catch (RuntimeException e) {
+                    if (attempt >= PROJECTION_ATTEMPTS) {
+                        // Durable in the journal, retried with the next batch or projected on next start
+                        log.error("Projection of {} transfers failed, {} callers wait for it", paymentRows.size(), results.size(), e);
+                        return;
+                    }
+                    log.warn("Projection of {} transfers failed, attempt {}", paymentRows.size(), attempt, e);
+                    Thread.sleep(PROJECTION_BACKOFF_MILLIS * attempt);
+                }
+            }
+            projectedUpTo = batchUpTo;
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).complete(transactions.get(i));
+            }
+            balanceRows.clear();
+            paymentRows.clear();
+            results.clear();
+            transactions.clear();
+        }
+    }
+
+    private static final class LoggingExceptionHandler implements ExceptionHandler<TransferEvent> {
+        @Override
+        public void handleEventException(Throwable ex, long sequence, TransferEvent event) {
+            log.error("Transfer engine failed on sequence {}", sequence, ex);
+            if (event.result != null) {
+                event.result.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            log.error("Transfer engine failed to start", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            log.error("Transfer engine failed to stop", ex);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.rindago.payment.service.engine;
+
+import com.rindago.payment.service.PaymentService;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ring buffer slot, reused for every transfer passing through it
+ */
+final class TransferEvent {
+    /**
+     * Balance seed marker: publisher did not read the account, engine already knows it
+     */
+    static final long NO_SEED = Long.MIN_VALUE;
+    /**
+     * Balance seed marker: account does not exist in the database
+     */
+    static final long ABSENT = Long.MIN_VALUE + 1;
+
+    // Request, set by publisher
+    long fromAccountId;
+    long toAccountId;
+    long amount;
+    long fromSeed;
+    long toSeed;
+    String idempotencyKey;
+    CompletableFuture<PaymentService.Transaction> result;
+
+    // Outcome, set by writer
+    long transactionId;
+    long timestamp;
+    long fromBalanceAfter;
+    long toBalanceAfter;
+    /**
+     * Business rejection or journal failure, transfer is not applied
+     */
+    RuntimeException failure;
+
+    void request(long fromAccountId, long toAccountId, long amount, long fromSeed, long toSeed,
+                 String idempotencyKey, CompletableFuture<PaymentService.Transaction> result) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.fromSeed = fromSeed;
+        this.toSeed = toSeed;
+        this.idempotencyKey = idempotencyKey;
+        this.result = result;
+        this.transactionId = 0;
+        this.failure = null;
+    }
+
+    boolean isApplied() {
+        return transactionId != 0;
+    }
+}
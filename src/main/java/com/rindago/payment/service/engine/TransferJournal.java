@@ -0,0 +1,177 @@
+package com.rindago.payment.service.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write-ahead journal of the transfer engine: fixed size records in a memory-mapped file.
+ * Appends only write to the page cache, {@link #force()} makes everything appended so far durable,
+ * the engine calls it once per batch of transfers (group commit).
+ * A record is valid when its checksum matches, replay stops at the first invalid one (torn write at crash).
+ * The idempotency key of a transfer is written in key records just before it, so a valid transfer record always comes
+ * with its whole key.
+ */
+final class TransferJournal implements Closeable {
+    static final int RECORD_SIZE = 64;
+
+    static final int TRANSFER = 1;
+    static final int SEED = 2;
+    static final int KEY = 3;
+
+    private static final int KEY_BYTES_PER_RECORD = 24;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long regionSize;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private boolean dirty;
+
+    TransferJournal(Path file, long regionSize) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Records never straddle two regions
+        this.regionSize = Math.max(RECORD_SIZE, regionSize - regionSize % RECORD_SIZE);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads all valid records and leaves the journal positioned for appending after the last one
+     */
+    void replay(Listener listener) throws IOException {
+        position = 0;
+        long keyTransactionId = 0;
+        byte[] key = null;
+        while (true) {
+            MappedByteBuffer buffer = regionAt(position);
+            int offset = (int) (position - regionStart);
+            int type = buffer.getInt(offset);
+            long a = buffer.getLong(offset + 8);
+            long b = buffer.getLong(offset + 16);
+            long c = buffer.getLong(offset + 24);
+            long d = buffer.getLong(offset + 32);
+            long e = buffer.getLong(offset + 40);
+            if ((type != TRANSFER && type != SEED && type != KEY) || buffer.getLong(offset + 48) != checksum(type, a, b, c, d, e)) {
+                return;
+            }
+            if (type == TRANSFER) {
+                listener.transfer(a, b, c, d, e, key != null && keyTransactionId == a ? new String(key, StandardCharsets.UTF_8) : null);
+                key = null;
+            } else if (type == SEED) {
+                listener.seed(a, b);
+            } else {
+                // Chunk index in the high half, key length in bytes in the low half
+                int index = (int) (b >>> 32);
+                if (index == 0) {
+                    keyTransactionId = a;
+                    key = new byte[(int) b];
+                }
+                if (key != null && keyTransactionId == a) {
+                    readKeyChunk(key, index, c, d, e);
+                }
+            }
+            position += RECORD_SIZE;
+        }
+    }
+
+    /**
+     * @param idempotencyKey null for a transfer without key
+     */
+    void appendTransfer(long transactionId, long fromAccountId, long toAccountId, long amount, long timestamp, String idempotencyKey) throws IOException {
+        if (idempotencyKey != null) {
+            byte[] key = idempotencyKey.getBytes(StandardCharsets.UTF_8);
+            for (int index = 0; index * KEY_BYTES_PER_RECORD < key.length; index++) {
+                long[] chunk = keyChunk(key, index);
+                append(KEY, transactionId, (long) index << 32 | key.length, chunk[0], chunk[1], chunk[2]);
+            }
+        }
+        append(TRANSFER, transactionId, fromAccountId, toAccountId, amount, timestamp);
+    }
+
+    void appendSeed(long accountId, long balance) throws IOException {
+        append(SEED, accountId, balance, 0, 0, 0);
+    }
+
+    void force() {
+        if (dirty) {
+            region.force();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void append(int type, long a, long b, long c, long d, long e) throws IOException {
+        MappedByteBuffer buffer = regionAt(position);
+        int offset = (int) (position - regionStart);
+        buffer.putInt(offset, type);
+        buffer.putInt(offset + 4, 0);
+        buffer.putLong(offset + 8, a);
+        buffer.putLong(offset + 16, b);
+        buffer.putLong(offset + 24, c);
+        buffer.putLong(offset + 32, d);
+        buffer.putLong(offset + 40, e);
+        buffer.putLong(offset + 48, checksum(type, a, b, c, d, e));
+        position += RECORD_SIZE;
+        dirty = true;
+    }
+
+    private MappedByteBuffer regionAt(long position) throws IOException {
+        if (region == null || position < regionStart || position >= regionStart + regionSize) {
+            // Previous region may hold appended but not yet forced records
+            force();
+            regionStart = position - position % regionSize;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        }
+        return region;
+    }
+
+    private static long[] keyChunk(byte[] key, int index) {
+        long[] chunk = new long[KEY_BYTES_PER_RECORD / Long.BYTES];
+        for (int i = 0; i < KEY_BYTES_PER_RECORD; i++) {
+            int at = index * KEY_BYTES_PER_RECORD + i;
+            if (at < key.length) {
+                chunk[i / Long.BYTES] |= (key[at] & 0xFFL) << (8 * (i % Long.BYTES));
+            }
+        }
+        return chunk;
+    }
+
+    private static void readKeyChunk(byte[] key, int index, long... chunk) {
+        for (int i = 0; i < KEY_BYTES_PER_RECORD; i++) {
+            int at = index * KEY_BYTES_PER_RECORD + i;
+            if (at < key.length) {
+                key[at] = (byte) (chunk[i / Long.BYTES] >>> (8 * (i % Long.BYTES)));
+            }
+        }
+    }
+
+    private static long checksum(int type, long a, long b, long c, long d, long e) {
+        long hash = 0x9E3779B97F4A7C15L ^ type;
+        for (long value : new long[]{a, b, c, d, e}) {
+            hash = (hash ^ value) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        return hash;
+    }
+
+    interface Listener {
+        void transfer(long transactionId, long fromAccountId, long toAccountId, long amount, long timestamp, String idempotencyKey);
+
+        void seed(long accountId, long balance);
+    }
+}
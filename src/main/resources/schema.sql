@@ -1,17 +1,85 @@
+DROP TABLE IF EXISTS account_checkpoint CASCADE;
+DROP TABLE IF EXISTS payment_request CASCADE;
+DROP TABLE IF EXISTS ledger_entry CASCADE;
 DROP TABLE IF EXISTS payment CASCADE;
+DROP TABLE IF EXISTS account_balance_slot CASCADE;
 DROP TABLE IF EXISTS account CASCADE;
+DROP SEQUENCE IF EXISTS account_seq;
+DROP SEQUENCE IF EXISTS payment_seq;
+DROP SEQUENCE IF EXISTS account_balance_slot_seq;
+DROP SEQUENCE IF EXISTS ledger_entry_seq;
+DROP SEQUENCE IF EXISTS payment_request_seq;
+
+-- pooled-lo: INCREMENT BY must match payment.id.increment-size.<sequence>
+CREATE SEQUENCE account_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE payment_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE account_balance_slot_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE ledger_entry_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE payment_request_seq START WITH 1 INCREMENT BY 50;
 
 CREATE TABLE account(
-  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id BIGINT PRIMARY KEY,
   name VARCHAR(50) NOT NULL,
-  balance NUMERIC(18, 2) NOT NULL
+  balance NUMERIC(18, 2) NOT NULL,
+  opening_balance NUMERIC(18, 2) DEFAULT 0 NOT NULL,
+  version BIGINT DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE payment(
-  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id BIGINT PRIMARY KEY,
   sender_account_id BIGINT NOT NULL,
   receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
   timestamp TIMESTAMP NOT NULL,
+  idempotency_key VARCHAR(64) UNIQUE,
   FOREIGN KEY (sender_account_id) REFERENCES account(id),
   FOREIGN KEY (receiver_account_id) REFERENCES account(id)
 );
+-- History of an account, newest first by (timestamp, id). Covering, so paging never touches the table rows
+CREATE INDEX payment_sender_history_idx ON payment(sender_account_id, timestamp, id, receiver_account_id, amount);
+CREATE INDEX payment_receiver_history_idx ON payment(receiver_account_id, timestamp, id, sender_account_id, amount);
+
+CREATE TABLE account_balance_slot(
+  id BIGINT PRIMARY KEY,
+  account_id BIGINT NOT NULL,
+  slot INT NOT NULL,
+  balance NUMERIC(18, 2) NOT NULL,
+  UNIQUE (account_id, slot),
+  FOREIGN KEY (account_id) REFERENCES account(id)
+);
+
+-- Append-only, never updated or deleted
+CREATE TABLE ledger_entry(
+  id BIGINT PRIMARY KEY,
+  payment_id BIGINT NOT NULL,
+  account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  timestamp TIMESTAMP NOT NULL,
+  FOREIGN KEY (payment_id) REFERENCES payment(id),
+  FOREIGN KEY (account_id) REFERENCES account(id)
+);
+CREATE INDEX ledger_entry_account_idx ON ledger_entry(account_id);
+
+-- Async mode queue, settled in the same transaction as the payment
+CREATE TABLE payment_request(
+  id BIGINT PRIMARY KEY,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  idempotency_key VARCHAR(64) UNIQUE,
+  status VARCHAR(16) NOT NULL,
+  accepted_at TIMESTAMP NOT NULL,
+  settled_at TIMESTAMP,
+  payment_id BIGINT,
+  error_code VARCHAR(32),
+  FOREIGN KEY (payment_id) REFERENCES payment(id)
+);
+CREATE INDEX payment_request_status_idx ON payment_request(status, id);
+
+-- Reconciliation checkpoint: opening balance plus every payment of the account stamped before horizon
+CREATE TABLE account_checkpoint(
+  account_id BIGINT PRIMARY KEY,
+  balance NUMERIC(18, 2) NOT NULL,
+  horizon TIMESTAMP NOT NULL,
+  FOREIGN KEY (account_id) REFERENCES account(id)
+);
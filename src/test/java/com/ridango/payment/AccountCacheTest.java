@@ -0,0 +1,108 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.AccountCache;
+import com.rindago.payment.service.PaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = PaymentApplication.class)
+public class AccountCacheTest {
+    @Autowired
+    private AccountCache accountCache;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testMissingAccount_is_cached() {
+        double hitsBefore = hits();
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> accountCache.precheck(Money.valueOf(1), -100L, -101L))
+                    .isInstanceOf(TransactionException.class)
+                    .extracting("errorCode").isEqualTo("NOT_FOUND_OWNER");
+        }
+
+        assertThat(hits() - hitsBefore).isEqualTo(2);
+    }
+
+    @Test
+    public void testBalance_is_refreshed_after_transfer() {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Cache+1@User", Money.valueOf(10));
+        Account receiverUserAccount = new Account(null, "Cache+2@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        // Rejected from cache while balance is low
+        assertThatThrownBy(() -> accountCache.precheck(Money.valueOf(50), senderUserAccount.getId(), receiverUserAccount.getId()))
+                .isInstanceOf(TransactionException.class)
+                .extracting("errorCode").isEqualTo("NOT_ENOUGH_AMOUNT");
+
+        paymentService.performTransaction(Money.valueOf(60), receiverUserAccount.getId(), senderUserAccount.getId());
+
+        accountCache.precheck(Money.valueOf(50), senderUserAccount.getId(), receiverUserAccount.getId());
+    }
+
+    @Test
+    public void testStaleBalance_is_read_again_before_rejecting() {
+        Account senderUserAccount = new Account(null, "Cache+3@User", Money.valueOf(10));
+        Account receiverUserAccount = new Account(null, "Cache+4@User", Money.valueOf(100));
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        assertThatThrownBy(() -> accountCache.precheck(Money.valueOf(50), senderUserAccount.getId(), receiverUserAccount.getId()))
+                .isInstanceOf(TransactionException.class)
+                .extracting("errorCode").isEqualTo("NOT_ENOUGH_AMOUNT");
+
+        // Credited by a writer that does not invalidate this cache
+        jdbcTemplate.update("update account set balance = 100 where id = ?", senderUserAccount.getId());
+
+        accountCache.precheck(Money.valueOf(50), senderUserAccount.getId(), receiverUserAccount.getId());
+    }
+
+    @Test
+    public void testMissingAccount_is_dropped_when_created() {
+        Account senderUserAccount = accountRepository.saveAndFlush(new Account(null, "Cache+5@User", Money.valueOf(10)));
+
+        // Ids still free in the current sequence block, the next account gets one of them
+        for (long id = senderUserAccount.getId() + 1; id <= senderUserAccount.getId() + 50; id++) {
+            long receiverId = id;
+            assertThatThrownBy(() -> accountCache.precheck(Money.valueOf(1), senderUserAccount.getId(), receiverId))
+                    .isInstanceOf(TransactionException.class)
+                    .extracting("errorCode").isEqualTo("NOT_FOUND_OWNER");
+        }
+
+        Account receiverUserAccount = accountRepository.saveAndFlush(new Account(null, "Cache+6@User", Money.valueOf(10)));
+
+        accountCache.precheck(Money.valueOf(1), senderUserAccount.getId(), receiverUserAccount.getId());
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "payment.account.cache").tag("result", "hit")
+                .functionCounter().count();
+    }
+}
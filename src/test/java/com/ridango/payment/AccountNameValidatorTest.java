@@ -0,0 +1,66 @@
+package com.ridango.payment;
+
+import com.rindago.payment.config.Constants;
+import com.rindago.payment.domain.AccountNameValidator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class AccountNameValidatorTest {
+    private static final Pattern NAME_PATTERN = Pattern.compile(Constants.NAME_REGEX);
+    private static final String ALPHABET = "aZ9_.-@!#";
+
+    @Test
+    public void testSameLanguage_asRegex() {
+        // Every string of up to 5 characters over the interesting characters
+        StringBuilder name = new StringBuilder();
+        compareUpTo(name, 5);
+    }
+
+    @Test
+    public void testTypicalNames() {
+        assertThat(AccountNameValidator.isValidName("Test@User")).isTrue();
+        assertThat(AccountNameValidator.isValidName("ridango.payments-team@mail.example.com")).isTrue();
+        assertThat(AccountNameValidator.isValidName("o'neil+tag@example.com")).isFalse();
+        assertThat(AccountNameValidator.isValidName("first+tag@example.com")).isTrue();
+        assertThat(AccountNameValidator.isValidName("first+tag@example..com")).isFalse();
+        assertThat(AccountNameValidator.isValidName("")).isFalse();
+        assertThat(AccountNameValidator.isValidName("käsi")).isFalse();
+    }
+
+    @Test
+    public void testAdversarialNames_runInLinearTime() {
+        String[] names = {
+                "a".repeat(200_000) + "#",
+                "!" + "a".repeat(200_000) + "@",
+                "a@" + "a.".repeat(100_000),
+                "a@" + "a-".repeat(100_000) + "..a",
+                "+" + "@".repeat(200_000),
+                "+".repeat(200_000) + "@" + "a".repeat(200_000) + "!"
+        };
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            for (String name : names) {
+                assertThat(AccountNameValidator.isValidName(name)).isFalse();
+            }
+        });
+    }
+
+    private static void compareUpTo(StringBuilder name, int length) {
+        String candidate = name.toString();
+        assertThat(AccountNameValidator.isValidName(candidate))
+                .as(candidate)
+                .isEqualTo(NAME_PATTERN.matcher(candidate).matches());
+        if (name.length() == length) {
+            return;
+        }
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            name.append(ALPHABET.charAt(i));
+            compareUpTo(name, length);
+            name.setLength(name.length() - 1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Outcomes of the conditional update path decided from row counts. Without the account cache every rejection comes
+ * from the statements, not from the precheck
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:atomictest;LOCK_TIMEOUT=5000",
+        "payment.transfer-mode=ATOMIC_UPDATE",
+        "payment.account-cache.enabled=false"
+})
+public class AtomicTransferTest {
+    private static final Long MISSING_ACCOUNT = Long.MAX_VALUE;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testMissingSender_rolls_back_deposit() {
+        Account receiver = accountRepository.save(new Account(null, "Atomic+1@User", Money.valueOf(10)));
+
+        // Lower id first, the receiver is credited before the sender update finds no row
+        assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(5), MISSING_ACCOUNT, receiver.getId()))
+                .isInstanceOf(TransactionException.class)
+                .hasMessage("Sender account not found")
+                .extracting("errorCode").isEqualTo("NOT_FOUND_OWNER");
+
+        assertThat(balance(receiver.getId())).isEqualTo(Money.valueOf(10));
+        assertThat(payments(receiver.getId())).isZero();
+    }
+
+    @Test
+    public void testBalanceNotEnough() {
+        Account sender = accountRepository.save(new Account(null, "Atomic+2@User", Money.valueOf(10)));
+        Account receiver = accountRepository.save(new Account(null, "Atomic+3@User", Money.valueOf(10)));
+
+        assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(11), sender.getId(), receiver.getId()))
+                .isInstanceOf(TransactionException.class)
+                .hasMessage("Sender balance is not enough")
+                .extracting("errorCode").isEqualTo("NOT_ENOUGH_AMOUNT");
+
+        assertThat(balance(sender.getId())).isEqualTo(Money.valueOf(10));
+        assertThat(balance(receiver.getId())).isEqualTo(Money.valueOf(10));
+    }
+
+    @Test
+    public void testMissingReceiver_rolls_back_withdraw() {
+        Account sender = accountRepository.save(new Account(null, "Atomic+4@User", Money.valueOf(10)));
+
+        // Sender has the lower id and is debited first
+        assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(5), sender.getId(), MISSING_ACCOUNT))
+                .isInstanceOf(TransactionException.class)
+                .hasMessage("Receiver account not found")
+                .extracting("errorCode").isEqualTo("NOT_FOUND_OWNER");
+
+        assertThat(balance(sender.getId())).isEqualTo(Money.valueOf(10));
+        assertThat(payments(sender.getId())).isZero();
+    }
+
+    private Money balance(Long accountId) {
+        return accountRepository.findById(accountId).orElseThrow().getBalance();
+    }
+
+    private int payments(Long accountId) {
+        return jdbcTemplate.queryForObject("select count(*) from payment where sender_account_id = ? or receiver_account_id = ?",
+                Integer.class, accountId, accountId);
+    }
+}
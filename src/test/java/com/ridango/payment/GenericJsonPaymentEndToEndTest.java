@@ -0,0 +1,13 @@
+package com.ridango.payment;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Same flows with the fast path codec switched off, requests go through Jackson databind and bean validation
+ */
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:genericjsontest;LOCK_TIMEOUT=5000",
+        "payment.json.fast-path=false"
+})
+public class GenericJsonPaymentEndToEndTest extends PaymentEndToEndTest {
+}
@@ -0,0 +1,15 @@
+package com.ridango.payment;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Same contention with group commit, small groups and a long window so most transfers share a transaction
+ */
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:grouptest;LOCK_TIMEOUT=5000",
+        "payment.group-commit.enabled=true",
+        "payment.group-commit.window=5ms",
+        "payment.group-commit.max-size=8"
+})
+public class GroupCommitPaymentConcurrencyTest extends PaymentConcurrencyTest {
+}
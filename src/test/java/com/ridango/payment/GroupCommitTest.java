@@ -0,0 +1,180 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.OutcomeUnknownException;
+import com.rindago.payment.exceptions.OverloadedException;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The test holds a row lock of one account, a transfer from it keeps the only committer waiting while the next ones
+ * queue up behind it
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:groupcommittest;LOCK_TIMEOUT=10000",
+        "payment.group-commit.enabled=true",
+        "payment.group-commit.window=0ms",
+        "payment.group-commit.max-size=8",
+        "payment.group-commit.committers=1",
+        "payment.group-commit.queue-capacity=3",
+        "payment.group-commit.timeout=1s"
+})
+public class GroupCommitTest {
+    private static final long WAIT_MILLIS = 5000;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRejection_does_not_affect_group() throws Exception {
+        Account locked = account("Group+1+0@User", 100);
+        Account rich = account("Group+1+1@User", 100);
+        Account poor = account("Group+1+2@User", 5);
+        Account receiver = account("Group+1+3@User", 0);
+
+        Future<?>[] group = whileLocked(locked, () -> {
+            Future<PaymentService.Transaction> blocking = blockCommitter(locked, receiver);
+            Future<?>[] queued = {
+                    submit(Money.valueOf(10), rich.getId(), receiver.getId()),
+                    submit(Money.valueOf(100), poor.getId(), receiver.getId()),
+                    submit(Money.valueOf(5), rich.getId(), receiver.getId()),
+                    blocking
+            };
+            awaitQueued(3);
+            return queued;
+        });
+
+        group[0].get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertThatThrownBy(() -> group[1].get(WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                .hasCauseInstanceOf(TransactionException.class)
+                .extracting("cause.errorCode").isEqualTo("NOT_ENOUGH_AMOUNT");
+        group[2].get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        group[3].get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+        // The three queued transfers were committed together after the blocking one
+        assertThat(meterRegistry.get("payment.group-commit.size").summary().max()).isGreaterThanOrEqualTo(3);
+        assertThat(balance(rich.getId())).isEqualTo(Money.valueOf(85));
+        assertThat(balance(poor.getId())).isEqualTo(Money.valueOf(5));
+        assertThat(balance(receiver.getId())).isEqualTo(Money.valueOf(16));
+    }
+
+    @Test
+    public void testQueueOverflowAndTimeout() throws Exception {
+        Account locked = account("Group+2+0@User", 100);
+        Account sender = account("Group+2+1@User", 100);
+        Account receiver = account("Group+2+2@User", 0);
+
+        whileLocked(locked, () -> {
+            Future<PaymentService.Transaction> blocking = blockCommitter(locked, receiver);
+            Future<?>[] queued = {
+                    submit(Money.valueOf(1), sender.getId(), receiver.getId()),
+                    submit(Money.valueOf(1), sender.getId(), receiver.getId()),
+                    submit(Money.valueOf(1), sender.getId(), receiver.getId())
+            };
+            awaitQueued(3);
+
+            assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId()))
+                    .isInstanceOf(OverloadedException.class);
+
+            // Still queued when their wait ends, withdrawn and never applied
+            for (Future<?> future : queued) {
+                assertThatThrownBy(() -> future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                        .hasCauseInstanceOf(OverloadedException.class);
+            }
+            // Taken by the committer, may still commit
+            assertThatThrownBy(() -> blocking.get(WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                    .hasCauseInstanceOf(OutcomeUnknownException.class);
+            return null;
+        });
+
+        // Lock released, only the taken transfer commits
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!balance(receiver.getId()).equals(Money.valueOf(1)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(balance(receiver.getId())).isEqualTo(Money.valueOf(1));
+        assertThat(balance(sender.getId())).isEqualTo(Money.valueOf(100));
+        assertThat(balance(locked.getId())).isEqualTo(Money.valueOf(99));
+    }
+
+    private Account account(String name, long balance) {
+        return accountRepository.save(new Account(null, name, Money.valueOf(balance)));
+    }
+
+    private Money balance(Long accountId) {
+        return accountRepository.findById(accountId).orElseThrow().getBalance();
+    }
+
+    private Future<PaymentService.Transaction> submit(Money amount, Long fromAccountId, Long toAccountId) {
+        return executor.submit(() -> paymentService.performTransaction(amount, fromAccountId, toAccountId));
+    }
+
+    /**
+     * Runs the callback while this thread holds the row lock of the account
+     */
+    private <T> T whileLocked(Account account, Callable<T> callback) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("select balance from account where id = ? for update", BigDecimal.class, account.getId());
+            try {
+                return callback.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Transfer from the locked account, returns once the committer has taken it and waits for the lock
+     */
+    private Future<PaymentService.Transaction> blockCommitter(Account locked, Account receiver) throws InterruptedException {
+        Future<PaymentService.Transaction> blocking = submit(Money.valueOf(1), locked.getId(), receiver.getId());
+        Thread.sleep(100);
+        awaitQueued(0);
+        return blocking;
+    }
+
+    private void awaitQueued(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (meterRegistry.get("payment.group-commit.queue").gauge().value() != size) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
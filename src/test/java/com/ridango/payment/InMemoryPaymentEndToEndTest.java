@@ -0,0 +1,57 @@
+package com.ridango.payment;
+
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import com.rindago.payment.service.engine.InMemoryPaymentService;
+import com.rindago.payment.service.engine.InMemoryTransferEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same flows against the in-memory transfer engine, database only sees its projection
+ */
+@ActiveProfiles(InMemoryPaymentService.PROFILE)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:enginetest;LOCK_TIMEOUT=5000",
+        "payment.engine.directory=build/tmp/engine-test-${random.uuid}"
+})
+public class InMemoryPaymentEndToEndTest extends PaymentEndToEndTest {
+
+    @Autowired
+    private InMemoryTransferEngine transferEngine;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testDuplicateKey_does_not_fail_projection() throws Exception {
+        Account sender = accountRepository.save(new Account(null, "Engine+1@User", Money.valueOf(100)));
+        Account receiver = accountRepository.save(new Account(null, "Engine+2@User", Money.valueOf(0)));
+
+        // Past the idempotency check of the service, both are applied by the engine
+        CompletableFuture<PaymentService.Transaction> first = transferEngine.submit(sender.getId(), receiver.getId(), 1000, "engine-duplicate");
+        CompletableFuture<PaymentService.Transaction> second = transferEngine.submit(sender.getId(), receiver.getId(), 1000, "engine-duplicate");
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from payment where sender_account_id = ?", Integer.class, sender.getId()))
+                .isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from payment where idempotency_key = ?", Integer.class, "engine-duplicate"))
+                .isEqualTo(1);
+        assertThat(accountRepository.findById(sender.getId()).orElseThrow().getBalance()).isEqualTo(Money.valueOf(80));
+        assertThat(accountRepository.findById(receiver.getId()).orElseThrow().getBalance()).isEqualTo(Money.valueOf(20));
+    }
+}
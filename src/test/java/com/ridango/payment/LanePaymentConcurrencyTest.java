@@ -0,0 +1,14 @@
+package com.ridango.payment;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Same contention with account lanes, few lanes so most transfers hold two of them
+ */
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lanetest;LOCK_TIMEOUT=5000",
+        "payment.lanes.enabled=true",
+        "payment.lanes.count=4"
+})
+public class LanePaymentConcurrencyTest extends PaymentConcurrencyTest {
+}
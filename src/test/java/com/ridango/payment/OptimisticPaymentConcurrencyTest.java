@@ -0,0 +1,13 @@
+package com.ridango.payment;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Same contention with optimistic locking, lost version checks are retried
+ */
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:optimistictest;LOCK_TIMEOUT=5000",
+        "payment.transfer-mode=OPTIMISTIC"
+})
+public class OptimisticPaymentConcurrencyTest extends PaymentConcurrencyTest {
+}
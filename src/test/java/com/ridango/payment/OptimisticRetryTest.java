@@ -0,0 +1,106 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import com.rindago.payment.service.TransferMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * A concurrent writer is simulated by bumping the sender version between reading the accounts and flushing them,
+ * in the same transaction, so every such attempt loses its version check
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:optimisticretrytest;LOCK_TIMEOUT=5000",
+        "payment.transfer-mode=OPTIMISTIC",
+        "payment.retry.max-attempts=3"
+})
+public class OptimisticRetryTest {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private TransferMetrics transferMetrics;
+
+    @Test
+    public void testConflict_is_retried() {
+        Account sender = accountRepository.save(new Account(null, "Optimistic+1@User", Money.valueOf(100)));
+        Account receiver = accountRepository.save(new Account(null, "Optimistic+2@User", Money.valueOf(0)));
+        double retries = count("payment.transfer.retries");
+        conflicts(sender.getId(), 2);
+
+        paymentService.performTransaction(Money.valueOf(10), sender.getId(), receiver.getId());
+
+        assertThat(count("payment.transfer.retries") - retries).isEqualTo(2);
+        assertThat(balance(sender.getId())).isEqualTo(Money.valueOf(90));
+        assertThat(balance(receiver.getId())).isEqualTo(Money.valueOf(10));
+    }
+
+    @Test
+    public void testRetriesExhausted_fails_with_concurrent_update() {
+        Account sender = accountRepository.save(new Account(null, "Optimistic+3@User", Money.valueOf(100)));
+        Account receiver = accountRepository.save(new Account(null, "Optimistic+4@User", Money.valueOf(0)));
+        double exhausted = count("payment.transfer.retries.exhausted");
+        conflicts(sender.getId(), Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(10), sender.getId(), receiver.getId()))
+                .isInstanceOf(TransactionException.class)
+                .extracting("errorCode").isEqualTo("CONCURRENT_UPDATE");
+
+        assertThat(count("payment.transfer.retries.exhausted") - exhausted).isEqualTo(1);
+        assertThat(balance(sender.getId())).isEqualTo(Money.valueOf(100));
+        assertThat(balance(receiver.getId())).isEqualTo(Money.ZERO);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from payment where sender_account_id = ?", Integer.class, sender.getId()))
+                .isZero();
+    }
+
+    /**
+     * The next attempts of a transfer find the account changed after they read it
+     */
+    private void conflicts(Long accountId, int attempts) {
+        AtomicInteger left = new AtomicInteger(attempts);
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            if (left.getAndDecrement() > 0) {
+                jdbcTemplate.update("update account set version = version + 1 where id = ?", accountId);
+            }
+            return null;
+        }).when(transferMetrics).stopPhase(any(), eq(TransferMetrics.Phase.LOOKUP));
+    }
+
+    private double count(String counter) {
+        return meterRegistry.get(counter).counter().count();
+    }
+
+    private Money balance(Long accountId) {
+        return accountRepository.findById(accountId).orElseThrow().getBalance();
+    }
+}
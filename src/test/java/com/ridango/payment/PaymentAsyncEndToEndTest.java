@@ -0,0 +1,125 @@
+package com.ridango.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.dto.PaymentStatusDTO;
+import com.rindago.payment.repository.AccountRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = PaymentApplication.class)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:asynctest;LOCK_TIMEOUT=5000",
+        "payment.async.enabled=true"
+})
+public class PaymentAsyncEndToEndTest {
+    @Autowired
+    private MockMvc restMvc;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Test
+    public void testAsyncFlow_settled_and_rejected() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Async+1@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Async+2@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        // Accepted, not yet settled
+        Long settledId = accept(new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60)));
+        Long rejectedId = accept(new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60)));
+
+        PaymentStatusDTO settled = awaitOutcome(settledId);
+        assertThat(settled.getStatus().name()).isEqualTo("SETTLED");
+        assertThat(settled.getTransactionId()).isNotNull();
+
+        PaymentStatusDTO rejected = awaitOutcome(rejectedId);
+        assertThat(rejected.getStatus().name()).isEqualTo("REJECTED");
+        assertThat(rejected.getErrorCode()).isEqualTo("NOT_ENOUGH_AMOUNT");
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance().longValue()).isEqualTo(40);
+
+        Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
+        assertThat(accountReceiver.getBalance().longValue()).isEqualTo(160);
+    }
+
+    @Test
+    public void testAsyncFlow_idempotency_key_reused_for_other_payment() throws Exception {
+        Account senderUserAccount = new Account(null, "Async+3@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Async+4@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "async-reused-3")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(10)))))
+                .andExpect(status().isAccepted());
+
+        restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "async-reused-3")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(new PaymentRequestDTO(receiverUserAccount.getId(), senderUserAccount.getId(), Money.valueOf(10)))))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors[0].code").value(equalTo("INVALID_IDEMPOTENCY_KEY")));
+    }
+
+    @Test
+    public void testAsyncFlow_unknown_request() throws Exception {
+        restMvc.perform(get("/payment/-1"))
+                .andExpect(status().isNotFound());
+    }
+
+    private Long accept(PaymentRequestDTO requestDTO) throws Exception {
+        String response = restMvc.perform(post("/payment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(requestDTO)))
+                .andDo(print())
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andExpect(jsonPath("$.status").value(equalTo("ACCEPTED")))
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(response, PaymentStatusDTO.class).getRequestId();
+    }
+
+    private PaymentStatusDTO awaitOutcome(Long requestId) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            String response = restMvc.perform(get("/payment/" + requestId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            PaymentStatusDTO status = mapper.readValue(response, PaymentStatusDTO.class);
+            if (!"ACCEPTED".equals(status.getStatus().name())) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Payment request " + requestId + " not settled in time");
+    }
+}
@@ -0,0 +1,98 @@
+package com.ridango.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.repository.AccountRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = PaymentApplication.class)
+@AutoConfigureMockMvc
+public class PaymentBatchEndToEndTest {
+    @Autowired
+    private MockMvc restMvc;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Test
+    public void testBatchFlow_partial() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Batch+1@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Batch+2@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        BatchPaymentRequestDTO requestDTO = new BatchPaymentRequestDTO(BatchPaymentRequestDTO.Mode.PARTIAL, List.of(
+                new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60)),
+                new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60)),
+                new PaymentRequestDTO(senderUserAccount.getId(), -1L, Money.valueOf(10))
+        ));
+
+        // Make transactions
+        restMvc.perform(post("/payments/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(requestDTO)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].transactionId").isNumber())
+                .andExpect(jsonPath("$[1].errorCode").value(equalTo("NOT_ENOUGH_AMOUNT")))
+                .andExpect(jsonPath("$[2].errorCode").value(equalTo("NOT_FOUND_OWNER")));
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance().longValue()).isEqualTo(40);
+
+        Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
+        assertThat(accountReceiver.getBalance().longValue()).isEqualTo(160);
+    }
+
+    @Test
+    public void testBatchFlow_all_or_nothing() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Batch+3@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Batch+4@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        BatchPaymentRequestDTO requestDTO = new BatchPaymentRequestDTO(BatchPaymentRequestDTO.Mode.ALL_OR_NOTHING, List.of(
+                new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60)),
+                new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(60))
+        ));
+
+        // Make transactions
+        restMvc.perform(post("/payments/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(requestDTO)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].errorCode").value(equalTo("BATCH_ROLLED_BACK")))
+                .andExpect(jsonPath("$[1].errorCode").value(equalTo("NOT_ENOUGH_AMOUNT")));
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance().longValue()).isEqualTo(100);
+
+        Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
+        assertThat(accountReceiver.getBalance().longValue()).isEqualTo(100);
+    }
+}
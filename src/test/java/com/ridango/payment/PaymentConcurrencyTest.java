@@ -0,0 +1,92 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.LedgerService;
+import com.rindago.payment.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = PaymentApplication.class)
+public class PaymentConcurrencyTest {
+    private static final int ACCOUNTS = 5;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 50;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Test
+    public void testConcurrentTransfers_total_is_preserved() throws Exception {
+        // Initialize the database
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account(null, "Stress+" + i + "@User", Money.valueOf(100)));
+        }
+        accountRepository.saveAll(accounts);
+        accountRepository.flush();
+
+        List<Long> ids = accounts.stream().map(Account::getId).collect(Collectors.toList());
+        Money totalBefore = totalBalance(ids);
+
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    // Few accounts and both directions on purpose: every pair sees A->B and B->A at the same time
+                    Long from = ids.get(random.nextInt(ACCOUNTS));
+                    Long to = ids.get(random.nextInt(ACCOUNTS));
+                    Money amount = Money.ofCents(random.nextInt(1, 5000));
+                    try {
+                        paymentService.performTransaction(amount, from, to);
+                    } catch (TransactionException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Any deadlock or lock timeout surfaces here as ExecutionException
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(totalBalance(ids)).isEqualByComparingTo(totalBefore);
+        assertThat(accountRepository.findAllById(ids))
+                .allSatisfy(account -> assertThat(account.getBalance()).isGreaterThanOrEqualTo(Money.ZERO));
+        assertThat(rejected.get()).isLessThan(THREADS * TRANSFERS_PER_THREAD);
+        assertThat(ledgerService.verify().getDriftCount()).isZero();
+    }
+
+    private Money totalBalance(List<Long> ids) {
+        return accountRepository.findAllById(ids).stream()
+                .map(Account::getBalance)
+                .reduce(Money.ZERO, Money::plus);
+    }
+}
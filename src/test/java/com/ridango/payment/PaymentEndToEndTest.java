@@ -3,6 +3,7 @@ package com.ridango.payment;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rindago.payment.PaymentApplication;
 import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
 import com.rindago.payment.dto.PaymentRequestDTO;
 import com.rindago.payment.repository.AccountRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,7 +14,6 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,13 +41,13 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test@User", BigDecimal.valueOf(100));
-        Account receiverUserAccount = new Account(null, "Ridango@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango@User", Money.valueOf(100));
 
         accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
         accountRepository.flush();
 
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), BigDecimal.valueOf(100));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(100));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -60,7 +60,7 @@ public class PaymentEndToEndTest {
                 .andExpect(jsonPath("$.timestamp").isNotEmpty());
 
         Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
-        assertThat(account.getBalance().stripTrailingZeros()).isEqualTo(BigDecimal.ZERO);
+        assertThat(account.getBalance()).isEqualTo(Money.ZERO);
 
         Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
         assertThat(accountReceiver.getBalance().longValue()).isEqualTo(200);
@@ -69,13 +69,13 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow_not_enough_points() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test+1@User", BigDecimal.valueOf(99));
-        Account receiverUserAccount = new Account(null, "Ridango+1@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test+1@User", Money.valueOf(99));
+        Account receiverUserAccount = new Account(null, "Ridango+1@User", Money.valueOf(100));
 
         accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
         accountRepository.flush();
 
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), BigDecimal.valueOf(100));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(100));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -89,7 +89,7 @@ public class PaymentEndToEndTest {
         ;
 
         Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
-        assertThat(account.getBalance().stripTrailingZeros()).isEqualTo(BigDecimal.valueOf(99));
+        assertThat(account.getBalance()).isEqualTo(Money.valueOf(99));
 
         Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
         assertThat(accountReceiver.getBalance().longValue()).isEqualTo(100);
@@ -98,13 +98,13 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow_not_negative_points() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test+20@User", BigDecimal.valueOf(100));
-        Account receiverUserAccount = new Account(null, "Ridango+20@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test+20@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango+20@User", Money.valueOf(100));
 
         accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
         accountRepository.flush();
 
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), BigDecimal.valueOf(-1));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(-1));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -128,12 +128,12 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow_not_receiver() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test+3@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test+3@User", Money.valueOf(100));
 
         accountRepository.save(senderUserAccount);
         accountRepository.flush();
 
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), null, BigDecimal.valueOf(100));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), null, Money.valueOf(100));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -153,7 +153,7 @@ public class PaymentEndToEndTest {
 
     @Test
     public void testTransactionFlow_no_sender_id() throws Exception {
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(-1L, -1L, BigDecimal.valueOf(100));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(-1L, -1L, Money.valueOf(100));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -171,12 +171,12 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow_no_receiver_id() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test+36@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test+36@User", Money.valueOf(100));
 
         accountRepository.save(senderUserAccount);
         accountRepository.flush();
 
-        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), -1L, BigDecimal.valueOf(100));
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), -1L, Money.valueOf(100));
 
         // Make transaction
         restMvc.perform(post("/payment")
@@ -193,8 +193,8 @@ public class PaymentEndToEndTest {
     @Test
     public void testTransactionFlow_not_transaction_amount() throws Exception {
         // Initialize the database
-        Account senderUserAccount = new Account(null, "Test+2@User", BigDecimal.valueOf(100));
-        Account receiverUserAccount = new Account(null, "Ridango+2@User", BigDecimal.valueOf(100));
+        Account senderUserAccount = new Account(null, "Test+2@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango+2@User", Money.valueOf(100));
 
         accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
         accountRepository.flush();
@@ -219,4 +219,96 @@ public class PaymentEndToEndTest {
         Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
         assertThat(accountReceiver.getBalance().longValue()).isEqualTo(100);
     }
+
+    @Test
+    public void testTransactionFlow_amount_scale() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Test+5@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango+5@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        // Third decimal place is rejected before it reaches the service
+        restMvc.perform(post("/payment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"senderAccountId\":" + senderUserAccount.getId() + ",\"receiverAccountId\":" + receiverUserAccount.getId() + ",\"amount\":10.005}"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+
+        // Amount as string is accepted, as in the README example
+        restMvc.perform(post("/payment")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"senderAccountId\":" + senderUserAccount.getId() + ",\"receiverAccountId\":" + receiverUserAccount.getId() + ",\"amount\":\"10.5\"}"))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance()).isEqualTo(Money.ofCents(8950));
+
+        Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
+        assertThat(accountReceiver.getBalance()).isEqualTo(Money.ofCents(11050));
+    }
+
+    @Test
+    public void testTransactionFlow_idempotent_replay() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Test+4@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango+4@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(30));
+
+        // Make transaction and retry it with the same key
+        String firstResponse = restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "replay-4")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(requestDTO)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "replay-4")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(requestDTO)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(firstResponse));
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance().longValue()).isEqualTo(70);
+
+        Account accountReceiver = accountRepository.findById(receiverUserAccount.getId()).orElseThrow();
+        assertThat(accountReceiver.getBalance().longValue()).isEqualTo(130);
+    }
+
+    @Test
+    public void testTransactionFlow_idempotency_key_reused_for_other_payment() throws Exception {
+        // Initialize the database
+        Account senderUserAccount = new Account(null, "Test+6@User", Money.valueOf(100));
+        Account receiverUserAccount = new Account(null, "Ridango+6@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(senderUserAccount, receiverUserAccount));
+        accountRepository.flush();
+
+        restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "reused-5")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(30)))))
+                .andExpect(status().isOk());
+
+        // Same key, different amount: rejected instead of answered with the first result
+        restMvc.perform(post("/payment")
+                .header("Idempotency-Key", "reused-5")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsBytes(new PaymentRequestDTO(senderUserAccount.getId(), receiverUserAccount.getId(), Money.valueOf(40)))))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors[0].code").value(equalTo("INVALID_IDEMPOTENCY_KEY")));
+
+        Account account = accountRepository.findById(senderUserAccount.getId()).orElseThrow();
+        assertThat(account.getBalance().longValue()).isEqualTo(70);
+    }
 }
@@ -0,0 +1,105 @@
+package com.ridango.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.PaymentHistoryItemDTO;
+import com.rindago.payment.dto.PaymentHistoryPageDTO;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = PaymentApplication.class)
+@AutoConfigureMockMvc
+public class PaymentHistoryEndToEndTest {
+    @Autowired
+    private MockMvc restMvc;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Test
+    public void testHistory_pages_and_export() throws Exception {
+        // Initialize the database
+        Account account = new Account(null, "History+1@User", Money.valueOf(100));
+        Account other = new Account(null, "History+2@User", Money.valueOf(100));
+        Account unrelated = new Account(null, "History+3@User", Money.valueOf(100));
+
+        accountRepository.saveAll(List.of(account, other, unrelated));
+        accountRepository.flush();
+
+        List<Long> expected = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            expected.add(0, paymentService.performTransaction(Money.valueOf(i), account.getId(), other.getId()).getTransactionId());
+            expected.add(0, paymentService.performTransaction(Money.valueOf(i), other.getId(), account.getId()).getTransactionId());
+        }
+        paymentService.performTransaction(Money.valueOf(1), other.getId(), unrelated.getId());
+
+        // Keyset pages of 4, newest first
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/accounts/" + account.getId() + "/payments").param("limit", "4");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            PaymentHistoryPageDTO page = mapper.readValue(restMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString(), PaymentHistoryPageDTO.class);
+            page.getItems().forEach(item -> paged.add(item.getTransactionId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(2);
+        assertThat(paged).isEqualTo(expected);
+
+        // Same history streamed as NDJSON
+        MvcResult export = restMvc.perform(get("/accounts/" + account.getId() + "/payments/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = restMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        List<Long> exported = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            exported.add(mapper.readValue(line, PaymentHistoryItemDTO.class).getTransactionId());
+        }
+        assertThat(exported).isEqualTo(expected);
+    }
+
+    @Test
+    public void testHistory_unknown_account_and_bad_cursor() throws Exception {
+        restMvc.perform(get("/accounts/-1/payments"))
+                .andExpect(status().isNotFound());
+
+        Account account = accountRepository.saveAndFlush(new Account(null, "History+4@User", Money.valueOf(100)));
+        restMvc.perform(get("/accounts/" + account.getId() + "/payments").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors[0].code").value(equalTo("INVALID_PAGE_CURSOR")));
+    }
+}
@@ -0,0 +1,122 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.domain.Payment;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.repository.PaymentRepository;
+import com.rindago.payment.service.PaymentService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements per read and write path, a changed count means a mapping or query regression
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:querycounttest;LOCK_TIMEOUT=5000",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "payment.transfer-mode=ATOMIC_UPDATE",
+        "payment.account-cache.enabled=false"
+})
+public class PaymentQueryCountTest {
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private static int accounts;
+
+    private Statistics statistics;
+    private Account sender;
+    private Account receiver;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        sender = new Account(null, "Queries+" + ++accounts + "@User", Money.valueOf(1000));
+        receiver = new Account(null, "Queries+" + ++accounts + "@User", Money.valueOf(1000));
+        accountRepository.saveAll(List.of(sender, receiver));
+        accountRepository.flush();
+
+        // Sequence blocks are fetched here, not in the measured calls
+        paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId());
+        statistics.clear();
+    }
+
+    @Test
+    public void testAtomicTransfer_loads_no_entity() {
+        paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId());
+
+        // Withdraw, deposit, payment insert, one batched insert of both ledger entries
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    public void testFindPayment_does_not_load_accounts() {
+        Long paymentId = paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId()).getTransactionId();
+        statistics.clear();
+
+        Long senderId = transactionTemplate.execute(status -> entityManager.find(Payment.class, paymentId).getSenderAccount().getId());
+
+        assertThat(senderId).isEqualTo(sender.getId());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testListPayments_no_query_per_account() {
+        List<Long> paymentIds = List.of(
+                paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId()).getTransactionId(),
+                paymentService.performTransaction(Money.valueOf(1), receiver.getId(), sender.getId()).getTransactionId());
+        statistics.clear();
+
+        List<Payment> payments = transactionTemplate.execute(status -> entityManager
+                .createQuery("select p from Payment p where p.id in :ids", Payment.class)
+                .setParameter("ids", paymentIds)
+                .getResultList());
+
+        assertThat(payments).hasSize(2);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testIdempotencyLookup_is_a_projection() {
+        paymentService.performTransaction(Money.valueOf(1), sender.getId(), receiver.getId(), "queries-projection");
+        statistics.clear();
+
+        assertThat(paymentRepository.findTransactionByIdempotencyKey("queries-projection")).isPresent();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.PaymentService;
+import com.rindago.payment.service.ReconciliationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * No settle lag and tiny chunks, so every run moves all checkpoints and splits the account range
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reconciliationtest;LOCK_TIMEOUT=5000",
+        "payment.reconciliation.settle-lag=0s",
+        "payment.reconciliation.chunk-size=2"
+})
+public class ReconciliationTest {
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testDrift_isFound_andCheckpointsMoveForward() throws InterruptedException {
+        Account sender = new Account(null, "Reconciled+1@User", Money.valueOf(100));
+        Account receiver = new Account(null, "Reconciled+2@User", Money.valueOf(100));
+        Account other = new Account(null, "Reconciled+3@User", Money.valueOf(100));
+        accountRepository.saveAll(List.of(sender, receiver, other));
+
+        paymentService.performTransaction(Money.valueOf(10), sender.getId(), receiver.getId());
+        // Horizon is in whole millis, keep the payments clearly before it
+        Thread.sleep(10);
+        ReconciliationService.Reconciliation first = reconciliationService.reconcile();
+
+        assertThat(first.getDriftCount()).isZero();
+        assertThat(first.getAccountsChecked()).isEqualTo(3);
+        assertThat(checkpoint(sender.getId())).isEqualTo(Money.valueOf(90));
+        assertThat(checkpoint(receiver.getId())).isEqualTo(Money.valueOf(110));
+
+        paymentService.performTransaction(Money.valueOf(5), receiver.getId(), sender.getId());
+        jdbcTemplate.update("update account set balance = balance + 1 where id = ?", receiver.getId());
+        Thread.sleep(10);
+        ReconciliationService.Reconciliation second = reconciliationService.reconcile();
+
+        assertThat(second.getDriftCount()).isEqualTo(1);
+        assertThat(second.getDrifts()).extracting(ReconciliationService.Drift::getAccountId).containsExactly(receiver.getId());
+        assertThat(second.getDrifts().get(0).getBalance()).isEqualTo(Money.valueOf(106));
+        assertThat(second.getDrifts().get(0).getPaymentsBalance()).isEqualTo(Money.valueOf(105));
+        assertThat(checkpoint(sender.getId())).isEqualTo(Money.valueOf(95));
+        assertThat(checkpoint(receiver.getId())).isEqualTo(Money.valueOf(105));
+        assertThat(reconciliationService.getLast()).isSameAs(second);
+    }
+
+    private Money checkpoint(Long accountId) {
+        return Money.of(jdbcTemplate.queryForObject("select balance from account_checkpoint where account_id = ?", BigDecimal.class, accountId));
+    }
+}
@@ -0,0 +1,183 @@
+package com.ridango.payment;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.config.PaymentProperties;
+import com.rindago.payment.domain.Account;
+import com.rindago.payment.domain.AccountBalanceSlot;
+import com.rindago.payment.domain.Money;
+import com.rindago.payment.dto.BatchPaymentRequestDTO;
+import com.rindago.payment.dto.PaymentRequestDTO;
+import com.rindago.payment.exceptions.TransactionException;
+import com.rindago.payment.repository.AccountBalanceSlotRepository;
+import com.rindago.payment.repository.AccountRepository;
+import com.rindago.payment.service.BatchPaymentService;
+import com.rindago.payment.service.LedgerService;
+import com.rindago.payment.service.PaymentService;
+import com.rindago.payment.service.ShardedBalanceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Hot accounts are opened by the tests, so they are marked hot and get their slots after the context started.
+ * Consolidation runs only when a test calls it
+ */
+@SpringBootTest(classes = PaymentApplication.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shardingtest;LOCK_TIMEOUT=5000",
+        "payment.sharding.enabled=true",
+        "payment.sharding.slots=4",
+        "payment.sharding.consolidation-interval-ms=3600000"
+})
+public class ShardedBalanceTest {
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 50;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private ShardedBalanceService shardedBalanceService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountBalanceSlotRepository slotRepository;
+
+    @Autowired
+    private PaymentProperties paymentProperties;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private BatchPaymentService batchPaymentService;
+
+    @Test
+    public void testConcurrentCreditsAndDebits_keep_balance() throws Exception {
+        Account hot = hotAccount("Hot+1@User", Money.valueOf(1000));
+        List<Long> others = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            others.add(accountRepository.save(new Account(null, "Hot+1+" + i + "@User", Money.valueOf(1000))).getId());
+        }
+
+        AtomicInteger credits = new AtomicInteger();
+        AtomicInteger debits = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean crediting = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    Long other = others.get(random.nextInt(others.size()));
+                    if (crediting) {
+                        paymentService.performTransaction(Money.valueOf(1), other, hot.getId());
+                        credits.incrementAndGet();
+                    } else {
+                        paymentService.performTransaction(Money.valueOf(2), hot.getId(), other);
+                        debits.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Money expected = Money.valueOf(1000 + credits.get() - 2L * debits.get());
+        assertThat(balance(hot.getId())).isEqualTo(expected);
+        // Debits sweep the row first, whatever was credited later is still in the slots
+        assertThat(rowBalance(hot.getId()).plus(slotTotal(hot.getId()))).isEqualTo(expected);
+        assertThat(slotRepository.findByAccountIdOrderBySlot(hot.getId()))
+                .allSatisfy(slot -> assertThat(slot.getBalance().signum()).isGreaterThanOrEqualTo(0));
+        assertThat(ledgerService.verify().getDriftCount()).isZero();
+
+        shardedBalanceService.consolidateAll();
+
+        assertThat(slotTotal(hot.getId())).isEqualTo(Money.ZERO);
+        assertThat(rowBalance(hot.getId())).isEqualTo(expected);
+        assertThat(balance(hot.getId())).isEqualTo(expected);
+    }
+
+    @Test
+    public void testDebit_sweeps_slots_or_changes_nothing() {
+        Account hot = hotAccount("Hot+2@User", Money.valueOf(10));
+        Account other = accountRepository.save(new Account(null, "Hot+2+0@User", Money.valueOf(100)));
+
+        paymentService.performTransaction(Money.valueOf(30), other.getId(), hot.getId());
+        assertThat(rowBalance(hot.getId())).isEqualTo(Money.valueOf(10));
+        assertThat(slotTotal(hot.getId())).isEqualTo(Money.valueOf(30));
+
+        // Whole row and the rest from slots
+        paymentService.performTransaction(Money.valueOf(35), hot.getId(), other.getId());
+        assertThat(rowBalance(hot.getId())).isEqualTo(Money.ZERO);
+        assertThat(slotTotal(hot.getId())).isEqualTo(Money.valueOf(5));
+
+        assertThatThrownBy(() -> paymentService.performTransaction(Money.valueOf(6), hot.getId(), other.getId()))
+                .isInstanceOf(TransactionException.class)
+                .extracting("errorCode").isEqualTo("NOT_ENOUGH_AMOUNT");
+
+        // Rejected debit is rolled back, receiver credit included
+        assertThat(rowBalance(hot.getId())).isEqualTo(Money.ZERO);
+        assertThat(slotTotal(hot.getId())).isEqualTo(Money.valueOf(5));
+        assertThat(balance(other.getId())).isEqualTo(Money.valueOf(105));
+    }
+
+    @Test
+    public void testBatchDebit_uses_slots() {
+        Account hot = hotAccount("Hot+3@User", Money.valueOf(10));
+        Account other = accountRepository.save(new Account(null, "Hot+3+0@User", Money.valueOf(100)));
+        paymentService.performTransaction(Money.valueOf(30), other.getId(), hot.getId());
+
+        List<BatchPaymentService.ItemResult> results = batchPaymentService.performBatch(List.of(
+                new PaymentRequestDTO(hot.getId(), other.getId(), Money.valueOf(35)),
+                new PaymentRequestDTO(hot.getId(), other.getId(), Money.valueOf(6))
+        ), BatchPaymentRequestDTO.Mode.PARTIAL);
+
+        assertThat(results.get(0).getErrorCode()).isNull();
+        assertThat(results.get(1).getErrorCode()).isEqualTo("NOT_ENOUGH_AMOUNT");
+        // Slots were drained into the locked row
+        assertThat(rowBalance(hot.getId())).isEqualTo(Money.valueOf(5));
+        assertThat(slotTotal(hot.getId())).isEqualTo(Money.ZERO);
+        assertThat(ledgerService.verify().getDriftCount()).isZero();
+    }
+
+    private Account hotAccount(String name, Money balance) {
+        Account account = accountRepository.save(new Account(null, name, balance));
+        paymentProperties.getSharding().getHotAccounts().add(account.getId());
+        shardedBalanceService.createSlots();
+        return account;
+    }
+
+    private Money balance(Long accountId) {
+        return shardedBalanceService.balance(accountRepository.findById(accountId).orElseThrow());
+    }
+
+    private Money rowBalance(Long accountId) {
+        return accountRepository.findRowBalanceById(accountId).orElseThrow();
+    }
+
+    private Money slotTotal(Long accountId) {
+        return Money.of(slotRepository.findByAccountIdOrderBySlot(accountId).stream()
+                .map(AccountBalanceSlot::getBalance)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+}